@@ -0,0 +1,167 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.route;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import spark.route.RouteMatcher.MatcherImplementation;
+import spark.utils.SparkUtils;
+
+/**
+ * Throughput of the route matchers for route tables of different sizes. The routes are a mix of literal, param
+ * and splat routes plus a few before filters, the requests either hit a route or, for the miss workload, hit
+ * nothing (404). The routes are registered either in one batch or one by one, the way Spark.get(...) adds them
+ * outside of a batch. Run with: mvn -Pbenchmarks test-compile exec:exec, which adds the gc profiler for the
+ * allocation rate.
+ *
+ * @see RouteRegistrationBenchmark for the time it takes to register the routes
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouteMatcherBenchmark {
+
+    private static final String BROWSER_ACCEPT = "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8";
+
+    private static final int REQUEST_COUNT = 1024;
+
+    @Param({"10", "100", "1000", "10000"})
+    public int routes;
+
+    @Param({"list", "trie", "radix", "compiled"})
+    public String matcher;
+
+    @Param({"hit", "miss"})
+    public String workload;
+
+    @Param({"none", "browser"})
+    public String accept;
+
+    @Param({"batched", "unbatched"})
+    public String registration;
+
+    private RouteMatcher routeMatcher;
+    private String acceptType;
+    private String[] paths;
+    private int next;
+
+    @Setup
+    public void setup() {
+        routeMatcher = newMatcher(matcher);
+        acceptType = accept.equals("browser") ? BROWSER_ACCEPT : null;
+
+        if (registration.equals("batched")) {
+            routeMatcher.batch(() -> addRoutes(routeMatcher, routes));
+        } else {
+            addRoutes(routeMatcher, routes);
+        }
+
+        Random random = new Random(42);
+        int resources = Math.max(1, routes / 4);
+        paths = new String[REQUEST_COUNT];
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            int resource = random.nextInt(resources);
+            if (workload.equals("miss")) {
+                paths[i] = "/api/unknown" + resource + "/" + random.nextInt(100000);
+            } else {
+                switch (i % 3) {
+                    case 0:
+                        paths[i] = "/api/resource" + resource;
+                        break;
+                    case 1:
+                        paths[i] = "/api/resource" + resource + "/" + random.nextInt(100000);
+                        break;
+                    default:
+                        paths[i] = "/files" + resource + "/docs/" + random.nextInt(100) + "/index.html";
+                        break;
+                }
+            }
+        }
+    }
+
+    static RouteMatcher newMatcher(String matcher) {
+        switch (MatcherImplementation.valueOf(matcher)) {
+            case list:
+                return new SimpleRouteMatcher();
+            case trie:
+                return new TrieRouteMatcher();
+            case radix:
+                return new RadixRouteMatcher();
+            case compiled:
+                return new CompiledRouteMatcher();
+            default:
+                throw new IllegalArgumentException(matcher);
+        }
+    }
+
+    /**
+     * Adds the benchmark routes: per resource a literal, two param routes and a splat route, and a few filters.
+     */
+    static void addRoutes(RouteMatcher routeMatcher, int routes) {
+        routeMatcher.addRoute(HttpMethod.before, SparkUtils.ALL_PATHS, "*/*", "before all");
+        routeMatcher.addRoute(HttpMethod.before, "/api/*", "*/*", "before api");
+        routeMatcher.addRoute(HttpMethod.after, "/api/:resource/*", "*/*", "after resource");
+        for (int i = 0; i < routes / 4; i++) {
+            routeMatcher.addRoute(HttpMethod.get, "/api/resource" + i, "*/*", "list " + i);
+            routeMatcher.addRoute(HttpMethod.get, "/api/resource" + i + "/:id", "application/json", "get " + i);
+            routeMatcher.addRoute(HttpMethod.put, "/api/resource" + i + "/:id/items/:item", "*/*", "put " + i);
+            routeMatcher.addRoute(HttpMethod.get, "/files" + i + "/*", "*/*", "files " + i);
+        }
+        for (int i = routes / 4 * 4; i < routes; i++) {
+            routeMatcher.addRoute(HttpMethod.get, "/health" + i, "*/*", "health " + i);
+        }
+    }
+
+    private String nextPath() {
+        String path = paths[next];
+        next = (next + 1) & (REQUEST_COUNT - 1);
+        return path;
+    }
+
+    @Benchmark
+    public RouteMatch findTargetForRequestedRoute() {
+        return routeMatcher.findTargetForRequestedRoute(HttpMethod.get, nextPath(), acceptType);
+    }
+
+    @Benchmark
+    public List<RouteMatch> findTargetsForRequestedRoute() {
+        return routeMatcher.findTargetsForRequestedRoute(HttpMethod.before, nextPath(), acceptType);
+    }
+
+    @Benchmark
+    public RoutePlan findPlanForRequestedRoute() {
+        return routeMatcher.findPlanForRequestedRoute(HttpMethod.get, nextPath(), acceptType);
+    }
+
+}
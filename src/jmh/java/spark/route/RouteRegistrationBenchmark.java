@@ -0,0 +1,65 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.route;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Startup time of an application: registering the routes of {@link RouteMatcherBenchmark}, in one batch or one
+ * by one the way Spark.get(...) adds them outside of a batch, followed by the first lookup. The routes are compiled
+ * when they are published, once per batch or once per route. Each invocation starts from an empty matcher.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RouteRegistrationBenchmark {
+
+    @Param({"100", "1000"})
+    public int routes;
+
+    @Param({"list", "trie", "radix", "compiled"})
+    public String matcher;
+
+    @Param({"batched", "unbatched"})
+    public String registration;
+
+    @Benchmark
+    public RouteMatch registerAndFindFirst() {
+        final RouteMatcher routeMatcher = RouteMatcherBenchmark.newMatcher(matcher);
+        if (registration.equals("batched")) {
+            routeMatcher.batch(() -> RouteMatcherBenchmark.addRoutes(routeMatcher, routes));
+        } else {
+            RouteMatcherBenchmark.addRoutes(routeMatcher, routes);
+        }
+        return routeMatcher.findTargetForRequestedRoute(HttpMethod.get, "/api/resource0/1", null);
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.webserver;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import spark.webserver.SparkServer.ThreadPoolImplementation;
+
+/**
+ * Time to run a burst of blocking handlers, each waiting on a simulated backend call, on Jetty's default pool of
+ * platform threads and on virtual threads. The virtual pool needs JDK 21 or later. Run with:
+ * mvn -Pbenchmarks test-compile exec:exec -Djmh.args=spark.webserver
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ThreadPoolBenchmark {
+
+    @Param({"platform", "virtual"})
+    public String threadPool;
+
+    @Param({"100", "1000", "10000"})
+    public int concurrentRequests;
+
+    @Param({"1"})
+    public int backendMillis;
+
+    private ThreadPool pool;
+
+    @Setup
+    public void setup() throws Exception {
+        if (ThreadPoolImplementation.valueOf(threadPool) == ThreadPoolImplementation.virtual) {
+            if (!VirtualThreadPool.isSupported()) {
+                throw new IllegalStateException("Virtual threads need JDK 21 or later");
+            }
+            pool = new VirtualThreadPool();
+        } else {
+            pool = new QueuedThreadPool();
+        }
+        ((LifeCycle) pool).start();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        ((LifeCycle) pool).stop();
+    }
+
+    @Benchmark
+    public void blockingHandlers() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(concurrentRequests);
+        for (int i = 0; i < concurrentRequests; i++) {
+            pool.execute(() -> {
+                try {
+                    Thread.sleep(backendMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+    }
+
+}
@@ -25,6 +25,14 @@ public final class Access {
         return response.body();
     }
 
+    public static Compression getCompression() {
+        return Spark.compression;
+    }
+
+    public static boolean isEtags() {
+        return Spark.etags;
+    }
+
     public static void runFromServlet() {
         Spark.runFromServlet();
     }
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.Deflater;
+
+/**
+ * The rules for compressing response bodies with gzip or deflate: the minimum body size, the compressible content
+ * types and the compression level. Set globally with Spark.compression(...) or for a response with
+ * {@link Response#compression(Compression)}, e.g. in a before filter for the paths of some routes.
+ * Immutable.
+ */
+public final class Compression {
+
+    /**
+     * No compression.
+     */
+    public static final Compression DISABLED = new Compression(false, Integer.MAX_VALUE, Deflater.NO_COMPRESSION);
+
+    /**
+     * The default minimum size in bytes of the bodies to compress, smaller bodies gain too little.
+     */
+    public static final int DEFAULT_MIN_SIZE = 1024;
+
+    /**
+     * The content types compressed by default.
+     */
+    public static final String[] DEFAULT_MIME_TYPES = {
+            "text/html", "text/plain", "text/css", "text/xml", "text/csv", "text/javascript",
+            "application/json", "application/javascript", "application/xml", "image/svg+xml"
+    };
+
+    private final boolean enabled;
+    private final int minSize;
+    private final int level;
+    private final String[] mimeTypes;
+
+    /**
+     * Compression with the default minimum size, level and content types.
+     */
+    public Compression() {
+        this(DEFAULT_MIN_SIZE, Deflater.DEFAULT_COMPRESSION, DEFAULT_MIME_TYPES);
+    }
+
+    /**
+     * @param minSize   the minimum size in bytes of the bodies to compress, bodies of unknown size (e.g. streams)
+     *                  are always compressed
+     * @param level     the compression level, 1 (fastest) to 9 (smallest) or -1 for the default
+     * @param mimeTypes the content types to compress, without parameters (e.g. application/json), the default
+     *                  ones if none
+     */
+    public Compression(int minSize, int level, String... mimeTypes) {
+        this(true, minSize, level, mimeTypes);
+    }
+
+    private Compression(boolean enabled, int minSize, int level, String... mimeTypes) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level " + level);
+        }
+        this.enabled = enabled;
+        this.minSize = minSize;
+        this.level = level;
+        this.mimeTypes = mimeTypes.length == 0 ? DEFAULT_MIME_TYPES : normalize(mimeTypes);
+    }
+
+    private static String[] normalize(String[] mimeTypes) {
+        String[] normalized = new String[mimeTypes.length];
+        for (int i = 0; i < mimeTypes.length; i++) {
+            normalized[i] = mimeTypes[i].trim().toLowerCase(Locale.ENGLISH);
+        }
+        return normalized;
+    }
+
+    /**
+     * @return true unless this is DISABLED
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the minimum size in bytes of the bodies to compress
+     */
+    public int getMinSize() {
+        return minSize;
+    }
+
+    /**
+     * @return the compression level
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * @return the content types to compress
+     */
+    public String[] getMimeTypes() {
+        return mimeTypes.clone();
+    }
+
+    /**
+     * @param contentType a content type, parameters like the charset are ignored
+     * @return true if bodies of the content type are compressed
+     */
+    public boolean isCompressible(String contentType) {
+        if (!enabled || contentType == null) {
+            return false;
+        }
+        int end = contentType.indexOf(';');
+        String mimeType = (end < 0 ? contentType : contentType.substring(0, end)).trim();
+        for (String compressible : mimeTypes) {
+            if (compressible.equalsIgnoreCase(mimeType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return enabled
+                ? "Compression(minSize=" + minSize + ", level=" + level + ", mimeTypes=" + Arrays.toString(mimeTypes)
+                + ")"
+                : "Compression(disabled)";
+    }
+
+}
@@ -29,19 +29,28 @@ public class HaltException extends RuntimeException {
     private int statusCode = HttpServletResponse.SC_OK;
     private String body = null;
 
+    /**
+     * Halt without status code and body, immutable and thrown by every call of halt()
+     */
+    static final HaltException HALT = new HaltException();
+
     HaltException() {
-        super();
+        // no stack trace, halting is control flow and must be as cheap as returning
+        super(null, null, false, false);
     }
 
     HaltException(int statusCode) {
+        this();
         this.statusCode = statusCode;
     }
 
     HaltException(String body) {
+        this();
         this.body = body;
     }
 
     HaltException(int statusCode, String body) {
+        this();
         this.statusCode = statusCode;
         this.body = body;
     }
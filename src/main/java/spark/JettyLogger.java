@@ -31,6 +31,11 @@ public class JettyLogger implements Logger {
         logger.debug(msg, th);
     }
 
+    @Override
+    public void debug(String msg, long value) {
+        logger.debug(msg, value);
+    }
+
     public Logger getLogger(String arg) {
         return this;
     }
@@ -16,8 +16,6 @@
  */
 package spark;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -32,7 +30,6 @@ import javax.servlet.http.HttpSession;
 
 import spark.route.RouteMatch;
 import spark.utils.IOUtils;
-import spark.utils.SparkUtils;
 
 /**
  * Provides information about the HTTP request
@@ -45,8 +42,7 @@ public class Request {
 
     private static final String USER_AGENT = "user-agent";
 
-    private Map<String, String> params;
-    private List<String> splat;
+    private RouteMatch match;
     private QueryParamsMap queryMap;
 
     private HttpServletRequest servletRequest;
@@ -93,12 +89,17 @@ public class Request {
      */
     Request(RouteMatch match, HttpServletRequest request) {
         this.servletRequest = request;
+        this.match = match;
+    }
 
-        List<String> requestList = SparkUtils.convertRouteToList(match.getRequestURI());
-        List<String> matchedList = SparkUtils.convertRouteToList(match.getMatchUri());
-
-        params = getParams(requestList, matchedList);
-        splat = getSplat(requestList, matchedList);
+    /**
+     * Binds the request to the match of the next filter or route handling it, so that one request serves all of
+     * them and what it has read lazily (body, headers, query map, ...) is shared.
+     *
+     * @param match the route match
+     */
+    void changeMatch(RouteMatch match) {
+        this.match = match;
     }
 
     /**
@@ -107,7 +108,7 @@ public class Request {
      * @return a map containing all route params
      */
     public Map<String, String> params() {
-        return Collections.unmodifiableMap(params);
+        return match.getParams();
     }
 
     /**
@@ -123,9 +124,9 @@ public class Request {
         }
 
         if (param.startsWith(":")) {
-            return params.get(param.toLowerCase()); // NOSONAR
+            return match.getParam(param.toLowerCase()); // NOSONAR
         } else {
-            return params.get(":" + param.toLowerCase()); // NOSONAR
+            return match.getParam(":" + param.toLowerCase()); // NOSONAR
         }
     }
 
@@ -133,6 +134,7 @@ public class Request {
      * @return an array containing the splat (wildcard) parameters
      */
     public String[] splat() {
+        List<String> splat = match.getSplat();
         return splat.toArray(new String[splat.size()]);
     }
 
@@ -426,50 +428,4 @@ public class Request {
         return servletRequest.getProtocol();
     }
 
-    private static Map<String, String> getParams(List<String> request, List<String> matched) {
-        LOG.debug("get params");
-
-        Map<String, String> params = new HashMap<String, String>();
-
-        for (int i = 0; (i < request.size()) && (i < matched.size()); i++) {
-            String matchedPart = matched.get(i);
-            if (SparkUtils.isParam(matchedPart)) {
-                LOG.debug("matchedPart: "
-                                  + matchedPart
-                                  + " = "
-                                  + request.get(i));
-                params.put(matchedPart.toLowerCase(), request.get(i));
-            }
-        }
-        return Collections.unmodifiableMap(params);
-    }
-
-    private static List<String> getSplat(List<String> request, List<String> matched) {
-        LOG.debug("get splat");
-
-        int nbrOfRequestParts = request.size();
-        int nbrOfMatchedParts = matched.size();
-
-        boolean sameLength = (nbrOfRequestParts == nbrOfMatchedParts);
-
-        List<String> splat = new ArrayList<String>();
-
-        for (int i = 0; (i < nbrOfRequestParts) && (i < nbrOfMatchedParts); i++) {
-            String matchedPart = matched.get(i);
-
-            if (SparkUtils.isSplat(matchedPart)) {
-
-                StringBuilder splatParam = new StringBuilder(request.get(i));
-                if (!sameLength && (i == (nbrOfMatchedParts - 1))) {
-                    for (int j = i + 1; j < nbrOfRequestParts; j++) {
-                        splatParam.append("/");
-                        splatParam.append(request.get(j));
-                    }
-                }
-                splat.add(splatParam.toString());
-            }
-        }
-        return Collections.unmodifiableList(splat);
-    }
-
 }
@@ -34,4 +34,14 @@ public final class RequestResponseFactory {
         return new Response(response);
     }
 
+    /**
+     * Binds the request of an exchange to the match of the next filter or route, instead of creating a new request.
+     *
+     * @param request the request
+     * @param match   the route match
+     */
+    public static void rebind(Request request, RouteMatch match) {
+        request.changeMatch(match);
+    }
+
 }
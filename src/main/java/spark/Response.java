@@ -38,6 +38,9 @@ public class Response {
 
     private HttpServletResponse response;
     private String body;
+    private Compression compression;
+    private Boolean etags;
+    private Long asyncTimeout;
 
     protected Response() {
         // Used by wrapper
@@ -84,6 +87,64 @@ public class Response {
         return this.body;
     }
 
+    /**
+     * Sets the compression rules of the response, replacing the global ones (see Spark.compression(...)).
+     * Use {@link Compression#DISABLED} to send the response uncompressed.
+     *
+     * @param compression the compression rules
+     */
+    public void compression(Compression compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * returns the compression rules set for the response
+     *
+     * @return the compression rules or null if the global ones apply
+     */
+    public Compression compression() {
+        return this.compression;
+    }
+
+    /**
+     * Turns the automatic ETag of the response on or off, replacing the global setting (see Spark.etags()). With
+     * it a GET answered with 200 gets a weak ETag computed from its body, String, byte[] or ByteBuffer, and a
+     * request whose If-None-Match lists it is answered with 304 Not Modified, without the body.
+     *
+     * @param etags true for an automatic ETag
+     */
+    public void etags(boolean etags) {
+        this.etags = etags;
+    }
+
+    /**
+     * returns whether the response gets an automatic ETag
+     *
+     * @return true or false if set for the response, null if the global setting applies
+     */
+    public Boolean etags() {
+        return this.etags;
+    }
+
+    /**
+     * Sets the time the CompletionStage returned by the route has to complete, replacing the global timeout (see
+     * Spark.asyncTimeout(...)). It is set by the route before returning the stage, e.g. for a slow report.
+     *
+     * @param milliseconds the timeout in milliseconds, 0 for no timeout
+     */
+    public void asyncTimeout(long milliseconds) {
+        this.asyncTimeout = milliseconds;
+    }
+
+    /**
+     * returns the time the CompletionStage returned by the route has to complete
+     *
+     * @return the timeout in milliseconds or null if the global one applies
+     */
+    public Long asyncTimeout() {
+        return this.asyncTimeout;
+    }
+
     /**
      * @return the raw response object handed in by Jetty
      */
@@ -53,6 +53,14 @@ public abstract class ResponseTransformerRouteImpl extends RouteImpl {
         super(path, acceptType);
     }
 
+    /**
+     * Renders every element, including the body types that other routes stream as they are.
+     */
+    @Override
+    public Object body(Object model) throws Exception {
+        return render(model);
+    }
+
     /**
      * Method called for rendering the output.
      *
@@ -16,11 +16,16 @@
  */
 package spark;
 
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 
 /**
  * A Route is built up by a path (for url-matching) and the implementation of the 'handle' method.
  * When a request is made, if present, the matching routes 'handle' method is invoked. The object
- * that is returned from 'handle' will be set to the response body (toString()).
+ * that is returned from 'handle' will be set to the response body (toString()), unless it is one of the
+ * body types written as they are: byte[], ByteBuffer, InputStream, File, Path and {@link StreamingOutput}.
  *
  * @author Per Wendel
  */
@@ -30,6 +35,7 @@ public abstract class RouteImpl {
 
     private String path;
     private String acceptType;
+    private Validator validator;
 
     /**
      * Constructor
@@ -69,7 +75,6 @@ public abstract class RouteImpl {
      * @return body content.
      * @throws java.lang.Exception when render fails
      */
-    //TODO change String return type to Stream. It should be done in another issue.
     public String render(Object element) throws Exception {
         if (element != null) {
             return element.toString();
@@ -78,6 +83,31 @@ public abstract class RouteImpl {
         }
     }
 
+    /**
+     * Turns the element returned by handle into the body of the response. By default the body types (byte[],
+     * ByteBuffer, InputStream, File, Path and StreamingOutput) are returned as they are, so they are streamed to
+     * the client, and any other element is rendered by {@link #render(Object)}.
+     *
+     * @param element the element returned by handle
+     * @return body content, a String or one of the body types.
+     * @throws java.lang.Exception when render fails
+     */
+    public Object body(Object element) throws Exception {
+        if (isStreamable(element)) {
+            return element;
+        }
+        return render(element);
+    }
+
+    private static boolean isStreamable(Object element) {
+        return element instanceof byte[]
+                || element instanceof ByteBuffer
+                || element instanceof InputStream
+                || element instanceof File
+                || element instanceof Path
+                || element instanceof StreamingOutput;
+    }
+
     /**
      * @return the accept type
      */
@@ -85,6 +115,18 @@ public abstract class RouteImpl {
         return acceptType;
     }
 
+    /**
+     * @return the validator of a conditional route or null
+     */
+    public Validator getValidator() {
+        return validator;
+    }
+
+    RouteImpl withValidator(Validator validator) {
+        this.validator = validator;
+        return this;
+    }
+
     /**
      * @return the path
      */
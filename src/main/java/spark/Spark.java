@@ -542,6 +542,59 @@ public final class Spark extends SparkBase {
     // END Template View Routes
     //////////////////////////////////////////////////
 
+    //////////////////////////////////////////////////
+    // BEGIN Conditional Routes
+    //////////////////////////////////////////////////
+
+    /**
+     * Map the conditional route for HTTP GET requests. The route is only invoked if the validator shows the
+     * client does not have the current representation, otherwise the request is answered with 304 Not Modified.
+     *
+     * @param path      the path
+     * @param route     The route
+     * @param validator the validator of the representation
+     */
+    public static synchronized void get(String path, Route route, Validator validator) {
+        addRoute(HttpMethod.get.name(), wrap(path, route).withValidator(validator));
+    }
+
+    /**
+     * Map the conditional route for HTTP GET requests. The route is only invoked if the validator shows the
+     * client does not have the current representation, otherwise the request is answered with 304 Not Modified.
+     *
+     * @param path        the path
+     * @param route       The route
+     * @param transformer the response transformer
+     * @param validator   the validator of the representation
+     */
+    public static synchronized void get(String path,
+                                        Route route,
+                                        ResponseTransformer transformer,
+                                        Validator validator) {
+        addRoute(HttpMethod.get.name(),
+                 ResponseTransformerRouteImpl.create(path, route, transformer).withValidator(validator));
+    }
+
+    /**
+     * Map the conditional route for HTTP GET requests. The route is only invoked if the validator shows the
+     * client does not have the current representation, otherwise the request is answered with 304 Not Modified.
+     *
+     * @param path      the path
+     * @param route     The route
+     * @param engine    the template engine
+     * @param validator the validator of the representation
+     */
+    public static synchronized void get(String path,
+                                        TemplateViewRoute route,
+                                        TemplateEngine engine,
+                                        Validator validator) {
+        addRoute(HttpMethod.get.name(), TemplateViewRouteImpl.create(path, route, engine).withValidator(validator));
+    }
+
+    //////////////////////////////////////////////////
+    // END Conditional Routes
+    //////////////////////////////////////////////////
+
     //////////////////////////////////////////////////
     // BEGIN Response Transforming Routes
     //////////////////////////////////////////////////
@@ -804,7 +857,7 @@ public final class Spark extends SparkBase {
      * halt will not work
      */
     public static void halt() {
-        throw new HaltException();
+        throw HaltException.HALT;
     }
 
     /**
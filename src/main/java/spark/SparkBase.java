@@ -7,7 +7,9 @@ import spark.route.RouteMatcher;
 import spark.route.RouteMatcher.MatcherImplementation;
 import spark.route.RouteMatcherFactory;
 import spark.servlet.SparkFilter;
+import spark.webserver.MatcherFilter;
 import spark.webserver.SparkServer;
+import spark.webserver.SparkServer.ThreadPoolImplementation;
 import spark.webserver.SparkServerFactory;
 
 /**
@@ -22,12 +24,37 @@ public abstract class SparkBase {
 
     protected static int port = SPARK_DEFAULT_PORT;
     protected static String ipAddress = "0.0.0.0";
+    protected static String unixSocket = null;
+    protected static boolean tcpConnector = true;
 
     protected static String keystoreFile;
     protected static String keystorePassword;
     protected static String truststoreFile;
     protected static String truststorePassword;
 
+    protected static long asyncTimeout = MatcherFilter.DEFAULT_ASYNC_TIMEOUT;
+    protected static ThreadPoolImplementation threadPoolImplementation = ThreadPoolImplementation.platform;
+    protected static int minThreads = SparkServer.JETTY_DEFAULT;
+    protected static int maxThreads = SparkServer.JETTY_DEFAULT;
+    protected static int threadIdleTimeout = SparkServer.JETTY_DEFAULT;
+
+    protected static int acceptors = SparkServer.JETTY_DEFAULT;
+    protected static int selectors = SparkServer.JETTY_DEFAULT;
+    protected static int acceptQueueSize = SparkServer.JETTY_DEFAULT;
+    protected static long idleTimeout = SparkServer.DEFAULT_IDLE_TIMEOUT;
+
+    protected static int requestHeaderSize = SparkServer.JETTY_DEFAULT;
+    protected static int responseHeaderSize = SparkServer.JETTY_DEFAULT;
+    protected static int outputBufferSize = SparkServer.JETTY_DEFAULT;
+
+    protected static boolean http2 = false;
+    protected static int maxConcurrentStreams = SparkServer.JETTY_DEFAULT;
+    protected static int initialStreamWindow = SparkServer.JETTY_DEFAULT;
+    protected static int initialSessionWindow = SparkServer.JETTY_DEFAULT;
+
+    protected static Compression compression = null;
+    protected static boolean etags = false;
+
     protected static String staticFileFolder = null;
     protected static String externalStaticFileFolder = null;
 
@@ -96,6 +123,45 @@ public abstract class SparkBase {
         Spark.port = port;
     }
 
+    /**
+     * Set a Unix domain socket that Spark should listen on next to the ip
+     * address and port, e.g. for a proxy running on the same host. Requests on
+     * the socket are not secured. This has to be called before any route
+     * mapping is done. It is only relevant when using the embedded Jetty server
+     * on a Unix-like OS and needs the optional dependency
+     * org.eclipse.jetty:jetty-unixsocket.
+     *
+     * @param path The path of the socket file
+     * @throws IllegalStateException if jetty-unixsocket is not on the classpath
+     */
+    public static synchronized void unixSocket(String path) {
+        unixSocket(path, true);
+    }
+
+    /**
+     * Set a Unix domain socket that Spark should listen on, either next to the
+     * ip address and port or instead of them. This has to be called before any
+     * route mapping is done. It is only relevant when using the embedded Jetty
+     * server on a Unix-like OS and needs the optional dependency
+     * org.eclipse.jetty:jetty-unixsocket.
+     *
+     * @param path         The path of the socket file
+     * @param tcpConnector true to listen on the ip address and port too, false
+     *                     to listen on the socket only
+     * @throws IllegalStateException if jetty-unixsocket is not on the classpath
+     */
+    public static synchronized void unixSocket(String path, boolean tcpConnector) {
+        if (initialized) {
+            throwBeforeRouteMappingException();
+        }
+        if (path == null) {
+            throw new IllegalArgumentException("Must provide the path of the unix socket");
+        }
+        SparkServer.checkUnixSocketAvailable();
+        Spark.unixSocket = path;
+        Spark.tcpConnector = tcpConnector;
+    }
+
     /**
      * Set the connection to be secure, using the specified keystore and
      * truststore. This has to be called before any route mapping is done. You
@@ -165,6 +231,179 @@ public abstract class SparkBase {
         Spark.truststorePassword = truststorePassword;
     }
 
+    /**
+     * Set the time a route returning a CompletionStage (e.g. a CompletableFuture) has to complete it. When it runs
+     * out the request is answered with 503 Service Unavailable. If not called the timeout is 30 seconds. This has
+     * to be called before any route mapping is done. When running from a servlet it is set by the 'asyncTimeout'
+     * init parameter of the SparkFilter instead. A route can replace it for its own stage with
+     * {@link Response#asyncTimeout(long)}.
+     *
+     * @param milliseconds the timeout in milliseconds, 0 for no timeout
+     */
+    public static synchronized void asyncTimeout(long milliseconds) {
+        if (initialized) {
+            throwBeforeRouteMappingException();
+        }
+        Spark.asyncTimeout = milliseconds;
+    }
+
+    /**
+     * Compress responses with gzip or deflate, when the client accepts it, using the default rules: bodies of at
+     * least 1 KB having a text, JSON, JavaScript, XML or SVG content type, at the default compression level. This
+     * has to be called before any route mapping is done. A route or filter can replace the rules for its response
+     * with {@link Response#compression(Compression)}.
+     */
+    public static synchronized void compression() {
+        compression(new Compression());
+    }
+
+    /**
+     * Compress responses with gzip or deflate, when the client accepts it. This has to be called before any route
+     * mapping is done. When using the embedded Jetty server the rules also apply to the static files.
+     *
+     * @param minSize   the minimum size in bytes of the bodies compressed, bodies of unknown size are always
+     *                  compressed
+     * @param level     the compression level, 1 (fastest) to 9 (smallest) or -1 for the default
+     * @param mimeTypes the content types compressed, compared without their parameters
+     */
+    public static synchronized void compression(int minSize, int level, String... mimeTypes) {
+        compression(new Compression(minSize, level, mimeTypes));
+    }
+
+    private static void compression(Compression compression) {
+        if (initialized && !runFromServlet) {
+            throwBeforeRouteMappingException();
+        }
+        Spark.compression = compression;
+    }
+
+    /**
+     * Give the responses of GET requests answered with 200 a weak ETag computed from their body and answer the
+     * requests whose If-None-Match lists it with 304 Not Modified, without the body. Bodies that are streams or
+     * files are not tagged. A route or filter can turn it on or off for its response with
+     * {@link Response#etags(boolean)}. This has to be called before any route mapping is done.
+     */
+    public static synchronized void etags() {
+        if (initialized && !runFromServlet) {
+            throwBeforeRouteMappingException();
+        }
+        Spark.etags = true;
+    }
+
+    /**
+     * Set the threads requests are handled on. With {@link ThreadPoolImplementation#virtual} every request runs on
+     * its own virtual thread (JDK 21 or later), so routes blocking on I/O do not exhaust a pool. If not called
+     * requests are handled by Jetty's pool of platform threads. On a JVM without virtual threads the server logs a
+     * warning and falls back to that pool, sized by {@link #threadPool(int, int, int)} if it was called, so size
+     * it for blocking routes too if the application may run on such a JVM. This has to be called before any route
+     * mapping is done. It is only relevant when using the embedded Jetty server.
+     *
+     * @param implementation the thread pool implementation
+     */
+    public static synchronized void threadPool(ThreadPoolImplementation implementation) {
+        if (initialized) {
+            throwBeforeRouteMappingException();
+        }
+        Spark.threadPoolImplementation = implementation;
+    }
+
+    /**
+     * Size the pool of threads handling the requests. If not called Jetty's defaults are used. This has to be
+     * called before any route mapping is done. It is only relevant when using the embedded Jetty server with
+     * platform threads: it is ignored with virtual threads, but applies when virtual threads were asked for and
+     * the JVM does not support them (before JDK 21), as the server then falls back to platform threads.
+     *
+     * @param minThreads        the number of threads kept even when idle
+     * @param maxThreads        the maximum number of threads
+     * @param idleTimeoutMillis the time in milliseconds a thread above minThreads is kept idle
+     */
+    public static synchronized void threadPool(int minThreads, int maxThreads, int idleTimeoutMillis) {
+        if (initialized) {
+            throwBeforeRouteMappingException();
+        }
+        if (maxThreads != SparkServer.JETTY_DEFAULT && minThreads > maxThreads) {
+            throw new IllegalArgumentException("minThreads must not exceed maxThreads");
+        }
+        Spark.minThreads = minThreads;
+        Spark.maxThreads = maxThreads;
+        Spark.threadIdleTimeout = idleTimeoutMillis;
+    }
+
+    /**
+     * Tune the connector accepting the connections. Pass -1 for the counts to leave to Jetty. If not called
+     * Jetty's defaults are used and idle connections are closed after 30 seconds. This has to be called before
+     * any route mapping is done. It is only relevant when using the embedded Jetty server.
+     *
+     * @param acceptors         the number of threads accepting connections
+     * @param selectors         the number of selectors watching the connections
+     * @param acceptQueueSize   the size of the queue of connections waiting to be accepted
+     * @param idleTimeoutMillis the time in milliseconds an idle connection is kept open
+     */
+    public static synchronized void connector(int acceptors, int selectors, int acceptQueueSize,
+                                              long idleTimeoutMillis) {
+        if (initialized) {
+            throwBeforeRouteMappingException();
+        }
+        Spark.acceptors = acceptors;
+        Spark.selectors = selectors;
+        Spark.acceptQueueSize = acceptQueueSize;
+        Spark.idleTimeout = idleTimeoutMillis;
+    }
+
+    /**
+     * Set the buffer sizes of the connections. Pass -1 for the sizes to leave to Jetty. This has to be called
+     * before any route mapping is done. It is only relevant when using the embedded Jetty server.
+     *
+     * @param requestHeaderSize  the maximum size in bytes of the request headers
+     * @param responseHeaderSize the maximum size in bytes of the response headers
+     * @param outputBufferSize   the size in bytes of the response buffer
+     */
+    public static synchronized void bufferSizes(int requestHeaderSize, int responseHeaderSize,
+                                                int outputBufferSize) {
+        if (initialized) {
+            throwBeforeRouteMappingException();
+        }
+        Spark.requestHeaderSize = requestHeaderSize;
+        Spark.responseHeaderSize = responseHeaderSize;
+        Spark.outputBufferSize = outputBufferSize;
+    }
+
+    /**
+     * Enable HTTP/2 next to HTTP/1.1, with Jetty's default stream concurrency and flow control windows. See
+     * {@link #http2(int, int, int)}.
+     */
+    public static synchronized void http2() {
+        http2(SparkServer.JETTY_DEFAULT, SparkServer.JETTY_DEFAULT, SparkServer.JETTY_DEFAULT);
+    }
+
+    /**
+     * Enable HTTP/2 next to HTTP/1.1. A secure server (see {@link #secure(String, String, String, String)})
+     * negotiates h2 with ALPN, a plain server accepts cleartext h2c, e.g. from a load balancer, by prior knowledge
+     * or by upgrading an HTTP/1.1 request. Clients not speaking HTTP/2 keep using HTTP/1.1. Pass -1 for the values
+     * to leave to Jetty. This has to be called before any route mapping is done. It is only relevant when using
+     * the embedded Jetty server.
+     * <p>
+     * HTTP/2 needs the optional dependency org.eclipse.jetty.http2:http2-server. A secure server also needs an ALPN
+     * module: org.eclipse.jetty:jetty-alpn-java-server on Java 9 or later, or
+     * org.eclipse.jetty:jetty-alpn-openjdk8-server on Java 8 (8u252 or later, which has the ALPN API).
+     *
+     * @param maxConcurrentStreams the maximum number of concurrent streams (requests) per connection
+     * @param initialStreamWindow  the initial flow control window in bytes of a stream
+     * @param initialSessionWindow the initial flow control window in bytes of a connection
+     * @throws IllegalStateException if http2-server is not on the classpath
+     */
+    public static synchronized void http2(int maxConcurrentStreams, int initialStreamWindow,
+                                          int initialSessionWindow) {
+        if (initialized) {
+            throwBeforeRouteMappingException();
+        }
+        SparkServer.checkHttp2Available();
+        Spark.http2 = true;
+        Spark.maxConcurrentStreams = maxConcurrentStreams;
+        Spark.initialStreamWindow = initialStreamWindow;
+        Spark.initialSessionWindow = initialSessionWindow;
+    }
+
     /**
      * Sets the folder in classpath serving static files. Observe: this method
      * must be called before all other methods.
@@ -235,6 +474,41 @@ public abstract class SparkBase {
     	RouteMatcherFactory.impl = matcher;
     }
 
+    /**
+     * Sets the RouteMatcher implementation and caches the results of the most recent route lookups.
+     * The cache is bounded by cacheSize and emptied whenever a route is added.
+     *
+     * @param matcher   the RouteMatcher implementation
+     * @param cacheSize the maximum number of cached lookups, 0 disables the cache
+     */
+    public static synchronized void matcher(MatcherImplementation matcher, int cacheSize) {
+    	RouteMatcherFactory.impl = matcher;
+    	RouteMatcherFactory.cacheSize = cacheSize;
+    }
+
+    /**
+     * Adds all routes and filters registered by registrations at once. Requests are matched against the routes
+     * from before until all of them have been added. The routes are compiled for matching once for the whole
+     * batch rather than once per route, so registering many routes this way is much faster.
+     *
+     * @param registrations registers the routes, e.g. by calling get(...) and before(...)
+     */
+    public static void batch(Runnable registrations) {
+        init();
+        routeMatcher.batch(registrations);
+    }
+
+    /**
+     * Freezes the routes: they are compiled into the form that is fastest to match. Call it once the routes are
+     * registered, it is not done automatically. Routes can still be added afterwards, they are compiled the same way
+     * by the thread adding them, before requests can match them.
+     */
+    public static synchronized void freezeRoutes() {
+        if (routeMatcher != null) {
+            routeMatcher.freeze();
+        }
+    }
+
     static synchronized void runFromServlet() {
         runFromServlet = true;
         if (!initialized) {
@@ -325,7 +599,17 @@ public abstract class SparkBase {
             new Thread(new Runnable() {
                 @Override
                 public void run() {
-                    server = SparkServerFactory.create(hasMultipleHandlers());
+                    server = SparkServerFactory.create(hasMultipleHandlers(), asyncTimeout, compression, etags);
+                    server.setThreadPoolImplementation(threadPoolImplementation);
+                    server.setThreadPool(minThreads, maxThreads, threadIdleTimeout);
+                    server.setConnector(acceptors, selectors, acceptQueueSize, idleTimeout);
+                    server.setBufferSizes(requestHeaderSize, responseHeaderSize, outputBufferSize);
+                    if (unixSocket != null) {
+                        server.setUnixSocket(unixSocket, tcpConnector);
+                    }
+                    if (http2) {
+                        server.setHttp2(maxConcurrentStreams, initialStreamWindow, initialSessionWindow);
+                    }
                     server.ignite(
                             ipAddress,
                             port,
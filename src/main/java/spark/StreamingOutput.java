@@ -0,0 +1,40 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A response body written by the route itself. Return it from a route to write large or generated content
+ * straight to the response output stream instead of building it in memory, e.g.
+ * <pre>
+ * get("/export", (request, response) -&gt; (StreamingOutput) out -&gt; exporter.writeTo(out));
+ * </pre>
+ */
+@FunctionalInterface
+public interface StreamingOutput {
+
+    /**
+     * Invoked once the filters and the route have run, to write the body.
+     *
+     * @param out the output stream of the response, closed by Spark
+     * @throws IOException when writing fails
+     */
+    void write(OutputStream out) throws IOException;
+
+}
@@ -85,6 +85,14 @@ public abstract class TemplateViewRouteImpl extends RouteImpl {
         return render(modelAndView);
     }
 
+    /**
+     * Renders every element, including the body types that other routes stream as they are.
+     */
+    @Override
+    public Object body(Object object) throws Exception {
+        return render(object);
+    }
+
     /**
      * Creates a new ModelAndView object with given arguments.
      *
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark;
+
+/**
+ * The validators of a conditional route: a version, sent as a weak ETag, and/or a last modification time, sent as
+ * Last-Modified. They are read after the before filters ran and, if the If-None-Match or If-Modified-Since header
+ * of the request shows the client has the current representation, the request is answered with 304 Not Modified
+ * without invoking the route. They should be cheap to get, e.g. a version counter, e.g.
+ * <pre>
+ * get("/catalog/:id", (request, response) -&gt; catalog.render(request.params(":id")),
+ *     Validator.version(request -&gt; catalog.version()));
+ * </pre>
+ * Immutable.
+ */
+public final class Validator {
+
+    /**
+     * Gets a validator of the representation a request asks for.
+     */
+    @FunctionalInterface
+    public interface Source {
+
+        /**
+         * @param request the request, with the params of the route
+         * @return the version or the last modification time in milliseconds since the epoch
+         * @throws java.lang.Exception when it cannot be read, handled like an exception of the route
+         */
+        long get(Request request) throws Exception;
+
+    }
+
+    private final Source version;
+    private final Source lastModified;
+
+    private Validator(Source version, Source lastModified) {
+        this.version = version;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * @param version the version of the representation, any change of it changes the version
+     * @return a validator comparing the version with If-None-Match
+     */
+    public static Validator version(Source version) {
+        return new Validator(version, null);
+    }
+
+    /**
+     * @param lastModified the last modification time of the representation in milliseconds since the epoch
+     * @return a validator comparing the time with If-Modified-Since, to the second
+     */
+    public static Validator lastModified(Source lastModified) {
+        return new Validator(null, lastModified);
+    }
+
+    /**
+     * @param version      the version of the representation
+     * @param lastModified the last modification time of the representation in milliseconds since the epoch
+     * @return a validator with both, If-None-Match takes precedence over If-Modified-Since when a request has both
+     */
+    public static Validator of(Source version, Source lastModified) {
+        return new Validator(version, lastModified);
+    }
+
+    /**
+     * @return the version or null
+     */
+    public Source getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the last modification time or null
+     */
+    public Source getLastModified() {
+        return lastModified;
+    }
+
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.route;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import spark.utils.LruCache;
+
+/**
+ * Route matcher that remembers the results of another route matcher for the most recently requested
+ * (method, path, accept type) combinations. The number of remembered results is bounded, so paths containing
+ * ids cannot grow the cache without limit.
+ */
+public class CachingRouteMatcher extends RouteMatcher {
+
+    private static final Object NO_MATCH = new Object();
+
+    // what a cached result is the result of
+    private static final int TARGET = 0;
+    private static final int TARGETS = 1;
+    private static final int PLAN = 2;
+
+    private final RouteMatcher delegate;
+    private final int maximumSize;
+
+    /**
+     * Replaced by an empty cache when the routes change, so that a lookup still running against the old
+     * routes can only fill a cache that is no longer used.
+     */
+    private volatile LruCache<Key, Object> cache;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Constructor
+     *
+     * @param delegate    the route matcher doing the actual matching
+     * @param maximumSize the maximum number of cached results
+     */
+    public CachingRouteMatcher(RouteMatcher delegate, int maximumSize) {
+        this.delegate = delegate;
+        this.maximumSize = maximumSize;
+        this.cache = new LruCache<>(maximumSize);
+    }
+
+    @Override
+    synchronized void addRoute(HttpMethod method, String route, String acceptType, Object target) {
+        delegate.addRoute(method, route, acceptType, target);
+        if (!isBatching()) {
+            publishRoutes();
+        }
+    }
+
+    @Override
+    public synchronized void batch(Runnable registrations) {
+        // the delegate publishes its routes before the cache is replaced, so that no lookup can fill the new
+        // cache from the old routes
+        super.batch(() -> delegate.batch(registrations));
+    }
+
+    @Override
+    void compileRoutes() {
+        // the cached results stay valid, freezing does not change what matches
+        delegate.freeze();
+    }
+
+    @Override
+    void publishRoutes() {
+        cache = new LruCache<>(maximumSize);
+    }
+
+    @Override
+    int snapshots() {
+        return delegate.snapshots();
+    }
+
+    @Override
+    public RouteMatch findTargetForRequestedRoute(HttpMethod httpMethod, String path, String acceptType) {
+        LruCache<Key, Object> current = cache;
+        Key key = new Key(httpMethod, path, acceptType, TARGET);
+        Object cached = current.get(key);
+        if (cached != null) {
+            hits.increment();
+            return cached != NO_MATCH ? (RouteMatch) cached : null;
+        }
+        misses.increment();
+        RouteMatch match = delegate.findTargetForRequestedRoute(httpMethod, path, acceptType);
+        current.put(key, match != null ? match : NO_MATCH);
+        return match;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<RouteMatch> findTargetsForRequestedRoute(HttpMethod httpMethod, String path, String acceptType) {
+        LruCache<Key, Object> current = cache;
+        Key key = new Key(httpMethod, path, acceptType, TARGETS);
+        Object cached = current.get(key);
+        if (cached != null) {
+            hits.increment();
+            return (List<RouteMatch>) cached;
+        }
+        misses.increment();
+        List<RouteMatch> matches = Collections.unmodifiableList(
+                delegate.findTargetsForRequestedRoute(httpMethod, path, acceptType));
+        current.put(key, matches);
+        return matches;
+    }
+
+    @Override
+    public RoutePlan findPlanForRequestedRoute(HttpMethod httpMethod, String path, String acceptType) {
+        LruCache<Key, Object> current = cache;
+        Key key = new Key(httpMethod, path, acceptType, PLAN);
+        Object cached = current.get(key);
+        if (cached != null) {
+            hits.increment();
+            return (RoutePlan) cached;
+        }
+        misses.increment();
+        RoutePlan plan = delegate.findPlanForRequestedRoute(httpMethod, path, acceptType);
+        current.put(key, plan);
+        return plan;
+    }
+
+    @Override
+    public synchronized void clearRoutes() {
+        delegate.clearRoutes();
+        if (!isBatching()) {
+            publishRoutes();
+        }
+    }
+
+    /**
+     * @return the number of lookups answered from the cache
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups passed on to the delegate
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of cached results
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    private static final class Key {
+        private final HttpMethod httpMethod;
+        private final String path;
+        private final String acceptType;
+        private final int kind;
+        private final int hash;
+
+        Key(HttpMethod httpMethod, String path, String acceptType, int kind) {
+            this.httpMethod = httpMethod;
+            this.path = path;
+            this.acceptType = acceptType;
+            this.kind = kind;
+
+            int h = httpMethod.hashCode();
+            h = 31 * h + path.hashCode();
+            h = 31 * h + (acceptType != null ? acceptType.hashCode() : 0);
+            this.hash = 31 * h + kind;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hash == other.hash
+                    && httpMethod == other.httpMethod
+                    && kind == other.kind
+                    && path.equals(other.path)
+                    && (acceptType != null ? acceptType.equals(other.acceptType) : other.acceptType == null);
+        }
+    }
+
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.route;
+
+/**
+ * Route matcher that is frozen from the start: the routes are always compiled into a {@link RouteAutomaton}, also
+ * when the matcher is used on its own, without a server freezing it at the first request. Like the other matchers
+ * it compiles the routes once, at the first lookup after they changed.
+ */
+public class CompiledRouteMatcher extends TrieRouteMatcher {
+
+    public CompiledRouteMatcher() {
+        freeze();
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.route;
+
+/**
+ * A request path split into its non-empty segments, as SparkUtils.convertRouteToList splits it. The segments are
+ * kept as offsets into the path, so splitting creates no substrings.
+ */
+final class PathSegments {
+
+    final String path;
+    final boolean trailingSlash;
+    final int size;
+
+    // start and end (exclusive) of segment i at 2 * i and 2 * i + 1
+    private final int[] bounds;
+
+    PathSegments(String path) {
+        this.path = path;
+        this.trailingSlash = path.endsWith("/");
+
+        int[] found = new int[16];
+        int count = 0;
+        int length = path.length();
+        int pos = 0;
+        while (pos < length) {
+            if (path.charAt(pos) == '/') {
+                pos++;
+                continue;
+            }
+            int end = path.indexOf('/', pos);
+            if (end < 0) {
+                end = length;
+            }
+            if (2 * count + 1 >= found.length) {
+                int[] grown = new int[found.length * 2];
+                System.arraycopy(found, 0, grown, 0, found.length);
+                found = grown;
+            }
+            found[2 * count] = pos;
+            found[2 * count + 1] = end;
+            count++;
+            pos = end;
+        }
+        this.bounds = found;
+        this.size = count;
+    }
+
+    /**
+     * @return the start offset of segment i in the path
+     */
+    int start(int i) {
+        return bounds[2 * i];
+    }
+
+    /**
+     * @return the end offset (exclusive) of segment i in the path
+     */
+    int end(int i) {
+        return bounds[2 * i + 1];
+    }
+
+    /**
+     * @return true if segment i equals literal
+     */
+    boolean segmentEquals(int i, String literal) {
+        int start = bounds[2 * i];
+        return bounds[2 * i + 1] - start == literal.length() && path.regionMatches(start, literal, 0, literal.length());
+    }
+
+}
@@ -0,0 +1,643 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.route;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import spark.utils.SparkUtils;
+
+/**
+ * Route matcher backed by a compressed radix tree over the characters of the routes. Literal parts shared by
+ * routes are stored once, on edges labeled with the shared characters, and params and splats are special edges
+ * matching one path segment. The request path is scanned once, in place, without splitting it into segments.
+ * It matches exactly what {@link SimpleRouteMatcher} matches, in the same (registration) order.
+ * <p>
+ * In the tree a route is the string of its parts, each part preceded by '/', e.g. /users/:id/edit is the edge
+ * "/users", a param edge and the edge "/edit". A '/' in a label matches one or more '/' of the path, as empty
+ * segments are skipped by SparkUtils.convertRouteToList.
+ */
+public class RadixRouteMatcher extends RouteMatcher {
+
+	private static final int NO_MATCH = Integer.MAX_VALUE;
+
+	private static final int[] NO_ENTRIES = new int[0];
+
+	private static final RadixNode[] NO_CHILDREN = new RadixNode[0];
+
+	/**
+	 * The routes and the read-only tree used by lookups, compiled again by the writer when the routes change. Guarded by this, except for the lookups.
+	 */
+	private final RouteTable<RadixTree> table = new RouteTable<>((entries, frozen) -> compile(entries));
+
+	@Override
+	public RouteMatch findTargetForRequestedRoute(HttpMethod httpMethod, String path, String acceptType) {
+		RadixTree tree = table.get();
+		StaticRouteIndex.StaticPath staticPath = tree.staticRoutes.get(path);
+		if (staticPath != null) {
+			return staticPath.findTarget(httpMethod, acceptType);
+		}
+		RouteEntry entry;
+		if (acceptType == null) {
+			int first = tree.firstMatch(httpMethod, path);
+			entry = first != NO_MATCH ? tree.entries[first] : null;
+		} else {
+			entry = TrieRouteMatcher.acceptable(tree.entries, tree.bestMatch(httpMethod, path, acceptType), acceptType);
+		}
+		return entry != null ? new RouteMatch(httpMethod, entry, new PathSegments(path), acceptType) : null;
+	}
+
+	@Override
+	public List<RouteMatch> findTargetsForRequestedRoute(HttpMethod httpMethod, String path, String acceptType) {
+		RadixTree tree = table.get();
+		StaticRouteIndex.StaticPath staticPath = tree.staticRoutes.get(path);
+		if (staticPath != null) {
+			return staticPath.findTargets(httpMethod, acceptType);
+		}
+		List<RouteEntry> routeEntries = tree.matches(bit(httpMethod), path);
+		if (routeEntries.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		List<RouteMatch> matchSet = new ArrayList<>();
+		PathSegments segments = new PathSegments(path);
+		for (RouteEntry routeEntry : routeEntries) {
+			if (acceptType == null || routeEntry.acceptedMimeType.isAcceptable(acceptType)) {
+				matchSet.add(new RouteMatch(httpMethod, routeEntry, segments, acceptType));
+			}
+		}
+		return matchSet;
+	}
+
+	@Override
+	public RoutePlan findPlanForRequestedRoute(HttpMethod httpMethod, String path, String acceptType) {
+		RadixTree tree = table.get();
+		StaticRouteIndex.StaticPath staticPath = tree.staticRoutes.get(path);
+		if (staticPath != null) {
+			return staticPath.findPlan(httpMethod, acceptType);
+		}
+		int methods = bit(HttpMethod.before) | bit(HttpMethod.after) | bit(httpMethod);
+		if (httpMethod == HttpMethod.head) {
+			methods |= bit(HttpMethod.get);
+		}
+
+		long[] matched = tree.collect(methods, path);
+
+		List<RouteMatch> beforeFilters = new ArrayList<>();
+		List<RouteMatch> afterFilters = new ArrayList<>();
+		// the bitset is in registration order, so the first matching route and GET route are the best so far
+		int route = NO_MATCH;
+		int get = NO_MATCH;
+		PathSegments segments = null;
+		if (matched != null) {
+			// the matches share the segments, they are split only when something matched
+			segments = new PathSegments(path);
+			for (int word = 0; word < matched.length; word++) {
+				long bits = matched[word];
+				while (bits != 0) {
+					int index = (word << 6) + Long.numberOfTrailingZeros(bits);
+					RouteEntry entry = tree.entries[index];
+					bits &= bits - 1;
+					if (entry.httpMethod == HttpMethod.before) {
+						addIfAcceptable(beforeFilters, entry, segments, acceptType);
+					} else if (entry.httpMethod == HttpMethod.after) {
+						addIfAcceptable(afterFilters, entry, segments, acceptType);
+					} else if (entry.httpMethod == httpMethod) {
+						route = TrieRouteMatcher.better(tree.entries, index, route, acceptType);
+					} else {
+						get = TrieRouteMatcher.better(tree.entries, index, get, acceptType);
+					}
+				}
+			}
+		}
+
+		RouteEntry entry = TrieRouteMatcher.acceptable(tree.entries, route, acceptType);
+		boolean getFallback = entry == null && TrieRouteMatcher.acceptable(tree.entries, get, acceptType) != null;
+		return new RoutePlan(beforeFilters,
+				entry != null ? new RouteMatch(httpMethod, entry, segments, acceptType) : null,
+				getFallback, afterFilters);
+	}
+
+	private static void addIfAcceptable(List<RouteMatch> matchSet, RouteEntry routeEntry, PathSegments segments,
+			String acceptType) {
+		if (acceptType == null || routeEntry.acceptedMimeType.isAcceptable(acceptType)) {
+			matchSet.add(new RouteMatch(routeEntry.httpMethod, routeEntry, segments, acceptType));
+		}
+	}
+
+	@Override
+	public synchronized void clearRoutes() {
+		table.clear();
+		if (!isBatching()) {
+			publishRoutes();
+		}
+	}
+
+	@Override
+	synchronized void addRoute(HttpMethod method, String route, String acceptType, Object target) {
+		table.add(new RouteEntry(method, route, acceptType, target));
+		if (!isBatching()) {
+			publishRoutes();
+		}
+	}
+
+	@Override
+	void publishRoutes() {
+		table.publish(isFrozen());
+	}
+
+	@Override
+	synchronized int snapshots() {
+		return table.snapshots();
+	}
+
+	//-------------- Compiling the tree
+
+	private static RadixTree compile(RouteEntry[] entries) {
+		List<Integer> allPaths = new ArrayList<>();
+		Builder root = new Builder("");
+
+		for (int index = 0; index < entries.length; index++) {
+			RouteEntry route = entries[index];
+			if ((route.httpMethod == HttpMethod.before || route.httpMethod == HttpMethod.after)
+					&& route.path.equals(SparkUtils.ALL_PATHS)) {
+				allPaths.add(index);
+				continue;
+			}
+			Builder node = root;
+			StringBuilder literal = new StringBuilder();
+			for (int part = 0; part < route.parts.length; part++) {
+				if (route.kinds[part] == RouteEntry.LITERAL) {
+					literal.append('/').append(route.parts[part]);
+				} else {
+					node = node.insert(literal.toString()).wildcard();
+					literal.setLength(0);
+				}
+			}
+			node = node.insert(literal.toString());
+			if (route.path.endsWith("*")) {
+				node.prefixEntries.add(index);
+			} else if (route.path.endsWith("/")) {
+				node.slashEntries.add(index);
+			} else {
+				node.exactEntries.add(index);
+			}
+		}
+		return new RadixTree(entries, toArray(allPaths), root.build(entries), new StaticRouteIndex(entries));
+	}
+
+	private static int[] toArray(List<Integer> indices) {
+		if (indices.isEmpty()) {
+			return NO_ENTRIES;
+		}
+		int[] array = new int[indices.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = indices.get(i);
+		}
+		return array;
+	}
+
+	/**
+	 * Mutable tree node, only used while compiling.
+	 */
+	private static class Builder {
+		String label;
+		List<Builder> children = new ArrayList<>();
+		Builder wildcard;
+		List<Integer> prefixEntries = new ArrayList<>();
+		List<Integer> exactEntries = new ArrayList<>();
+		List<Integer> slashEntries = new ArrayList<>();
+
+		Builder(String label) {
+			this.label = label;
+		}
+
+		Builder wildcard() {
+			if (wildcard == null) {
+				wildcard = new Builder("");
+			}
+			return wildcard;
+		}
+
+		/**
+		 * @return the node reached from this node by the characters of literal, splitting edges where needed
+		 */
+		Builder insert(String literal) {
+			Builder node = this;
+			int pos = 0;
+			while (pos < literal.length()) {
+				Builder child = node.child(literal.charAt(pos));
+				if (child == null) {
+					child = new Builder(literal.substring(pos));
+					node.children.add(child);
+					return child;
+				}
+				int common = 0;
+				while (common < child.label.length() && pos + common < literal.length()
+						&& child.label.charAt(common) == literal.charAt(pos + common)) {
+					common++;
+				}
+				if (common < child.label.length()) {
+					// the edge continues differently, split it where the literal leaves it
+					Builder split = new Builder(child.label.substring(0, common));
+					child.label = child.label.substring(common);
+					split.children.add(child);
+					node.children.set(node.children.indexOf(child), split);
+					child = split;
+				}
+				node = child;
+				pos += common;
+			}
+			return node;
+		}
+
+		Builder child(char first) {
+			for (Builder child : children) {
+				if (child.label.charAt(0) == first) {
+					return child;
+				}
+			}
+			return null;
+		}
+
+		RadixNode build(RouteEntry[] entries) {
+			Collections.sort(children, (a, b) -> a.label.charAt(0) - b.label.charAt(0));
+			char[] firstChars = new char[children.size()];
+			RadixNode[] built = children.isEmpty() ? NO_CHILDREN : new RadixNode[children.size()];
+			for (int i = 0; i < built.length; i++) {
+				firstChars[i] = children.get(i).label.charAt(0);
+				built[i] = children.get(i).build(entries);
+			}
+			return new RadixNode(label, firstChars, built, wildcard != null ? wildcard.build(entries) : null,
+					toArray(prefixEntries), toArray(exactEntries), toArray(slashEntries), entries);
+		}
+	}
+
+	//-------------- Matching
+
+	/**
+	 * The routes of all http methods. Entries are referred to by their index, which is their registration order.
+	 */
+	static final class RadixTree {
+		final RouteEntry[] entries;
+		final int[] allPaths;
+		final RadixNode root;
+
+		/**
+		 * The results for the paths of the literal routes, consulted before the tree is walked.
+		 */
+		final StaticRouteIndex staticRoutes;
+
+		RadixTree(RouteEntry[] entries, int[] allPaths, RadixNode root, StaticRouteIndex staticRoutes) {
+			this.entries = entries;
+			this.allPaths = allPaths;
+			this.root = root;
+			this.staticRoutes = staticRoutes;
+		}
+
+		/**
+		 * @return the index of the first registered route of method matching path, or NO_MATCH
+		 */
+		int firstMatch(HttpMethod method, String path) {
+			int best = first(entries, allPaths, method.ordinal(), NO_MATCH);
+			return root.firstMatch(entries, method.ordinal(), path, 0, path.endsWith("/"), best);
+		}
+
+		/**
+		 * Picks the best route of method matching path for acceptType while walking the tree, without collecting
+		 * the matching routes.
+		 *
+		 * @return the index of the route matching acceptType best, the first registered one if several match
+		 * equally well, or NO_MATCH
+		 */
+		int bestMatch(HttpMethod method, String path, String acceptType) {
+			int best = better(entries, allPaths, method.ordinal(), NO_MATCH, acceptType);
+			return root.bestMatch(entries, method.ordinal(), path, 0, path.endsWith("/"), best, acceptType);
+		}
+
+		/**
+		 * @param methods bit mask of the http methods to match
+		 * @return the indices of the matching routes as a bitset, or null if none matches
+		 */
+		long[] collect(int methods, String path) {
+			long[] matched = mark(entries, allPaths, methods, null);
+			return root.collect(entries, methods, path, 0, path.endsWith("/"), matched);
+		}
+
+		/**
+		 * @param methods bit mask of the http methods to match
+		 * @return all routes of these methods matching path, in registration order
+		 */
+		List<RouteEntry> matches(int methods, String path) {
+			long[] matched = collect(methods, path);
+			if (matched == null) {
+				return Collections.emptyList();
+			}
+			List<RouteEntry> result = new ArrayList<>();
+			for (int word = 0; word < matched.length; word++) {
+				long bits = matched[word];
+				while (bits != 0) {
+					result.add(entries[(word << 6) + Long.numberOfTrailingZeros(bits)]);
+					bits &= bits - 1;
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Node of a compiled radix tree, reached over an edge labeled with one or more characters. The literal children
+	 * are sorted by the first character of their labels, which differ, so a child is found by one character. The
+	 * wildcard child is the edge of params and splats. The entries ending at a node are split by how RouteEntry
+	 * treats the end of the path:
+	 * <ul>
+	 * <li>prefixEntries - the route ends with '*' and also matches longer paths</li>
+	 * <li>exactEntries - the path must end here, without trailing slash</li>
+	 * <li>slashEntries - the path must end here, with a trailing slash</li>
+	 * </ul>
+	 */
+	static final class RadixNode {
+		final String label;
+		final char[] firstChars;
+		final RadixNode[] children;
+		final RadixNode wildcard;
+		final int[] prefixEntries;
+		final int[] exactEntries;
+		final int[] slashEntries;
+
+		/**
+		 * Lowest entry index in this sub tree, used to prune branches that cannot improve a first match.
+		 */
+		final int minEntry;
+
+		/**
+		 * Bit mask of the http methods having routes in this sub tree, used to skip branches.
+		 */
+		final int methods;
+
+		RadixNode(String label, char[] firstChars, RadixNode[] children, RadixNode wildcard, int[] prefixEntries,
+				int[] exactEntries, int[] slashEntries, RouteEntry[] entries) {
+			this.label = label;
+			this.firstChars = firstChars;
+			this.children = children;
+			this.wildcard = wildcard;
+			this.prefixEntries = prefixEntries;
+			this.exactEntries = exactEntries;
+			this.slashEntries = slashEntries;
+
+			int min = Math.min(firstIndex(prefixEntries), Math.min(firstIndex(exactEntries), firstIndex(slashEntries)));
+			int mask = methodsOf(entries, prefixEntries) | methodsOf(entries, exactEntries)
+					| methodsOf(entries, slashEntries);
+			for (RadixNode child : children) {
+				min = Math.min(min, child.minEntry);
+				mask |= child.methods;
+			}
+			if (wildcard != null) {
+				min = Math.min(min, wildcard.minEntry);
+				mask |= wildcard.methods;
+			}
+			this.minEntry = min;
+			this.methods = mask;
+		}
+
+		/**
+		 * @param pos the position in path right after the label of this node
+		 */
+		int firstMatch(RouteEntry[] entries, int method, String path, int pos, boolean trailingSlash, int best) {
+			if ((methods & (1 << method)) == 0 || minEntry >= best) {
+				return best;
+			}
+			if (atSegmentEnd(path, pos)) {
+				best = first(entries, prefixEntries, method, best);
+				int start = skipSlashes(path, pos);
+				if (start == path.length()) {
+					best = first(entries, trailingSlash ? slashEntries : exactEntries, method, best);
+					if (trailingSlash && wildcard != null) {
+						// a trailing slash lets a wildcard at the end of the route match an empty segment
+						best = first(entries, wildcard.prefixEntries, method, best);
+					}
+					return best;
+				}
+				if (wildcard != null) {
+					best = wildcard.firstMatch(entries, method, path, segmentEnd(path, start), trailingSlash, best);
+				}
+			}
+			RadixNode child = child(path, pos);
+			if (child != null) {
+				int next = child.matchLabel(path, pos);
+				if (next >= 0) {
+					best = child.firstMatch(entries, method, path, next, trailingSlash, best);
+				}
+			}
+			return best;
+		}
+
+		/**
+		 * @param pos the position in path right after the label of this node
+		 */
+		int bestMatch(RouteEntry[] entries, int method, String path, int pos, boolean trailingSlash, int best,
+				String acceptType) {
+			if ((methods & (1 << method)) == 0) {
+				return best;
+			}
+			if (atSegmentEnd(path, pos)) {
+				best = better(entries, prefixEntries, method, best, acceptType);
+				int start = skipSlashes(path, pos);
+				if (start == path.length()) {
+					best = better(entries, trailingSlash ? slashEntries : exactEntries, method, best, acceptType);
+					if (trailingSlash && wildcard != null) {
+						// a trailing slash lets a wildcard at the end of the route match an empty segment
+						best = better(entries, wildcard.prefixEntries, method, best, acceptType);
+					}
+					return best;
+				}
+				if (wildcard != null) {
+					best = wildcard.bestMatch(entries, method, path, segmentEnd(path, start), trailingSlash, best,
+							acceptType);
+				}
+			}
+			RadixNode child = child(path, pos);
+			if (child != null) {
+				int next = child.matchLabel(path, pos);
+				if (next >= 0) {
+					best = child.bestMatch(entries, method, path, next, trailingSlash, best, acceptType);
+				}
+			}
+			return best;
+		}
+
+		/**
+		 * @param pos the position in path right after the label of this node
+		 */
+		long[] collect(RouteEntry[] entries, int methods, String path, int pos, boolean trailingSlash,
+				long[] matched) {
+			methods &= this.methods;
+			if (methods == 0) {
+				return matched;
+			}
+			if (atSegmentEnd(path, pos)) {
+				matched = mark(entries, prefixEntries, methods, matched);
+				int start = skipSlashes(path, pos);
+				if (start == path.length()) {
+					matched = mark(entries, trailingSlash ? slashEntries : exactEntries, methods, matched);
+					if (trailingSlash && wildcard != null) {
+						// a trailing slash lets a wildcard at the end of the route match an empty segment
+						matched = mark(entries, wildcard.prefixEntries, methods, matched);
+					}
+					return matched;
+				}
+				if (wildcard != null) {
+					matched = wildcard.collect(entries, methods, path, segmentEnd(path, start), trailingSlash,
+							matched);
+				}
+			}
+			RadixNode child = child(path, pos);
+			if (child != null) {
+				int next = child.matchLabel(path, pos);
+				if (next >= 0) {
+					matched = child.collect(entries, methods, path, next, trailingSlash, matched);
+				}
+			}
+			return matched;
+		}
+
+		/**
+		 * @return the literal child whose label starts with the next character of the path, or null
+		 */
+		RadixNode child(String path, int pos) {
+			if (pos == path.length()) {
+				return null;
+			}
+			// a path not starting with '/' still starts with a segment
+			char next = pos == 0 && label.isEmpty() ? '/' : path.charAt(pos);
+			int low = 0;
+			int high = firstChars.length - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				if (firstChars[mid] < next) {
+					low = mid + 1;
+				} else if (firstChars[mid] > next) {
+					high = mid - 1;
+				} else {
+					return children[mid];
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * @return the position in path after the label or -1 if the path does not continue with the label
+		 */
+		int matchLabel(String path, int pos) {
+			int length = path.length();
+			for (int i = 0; i < label.length(); i++) {
+				char c = label.charAt(i);
+				if (c == '/') {
+					if (pos < length && path.charAt(pos) == '/') {
+						pos = skipSlashes(path, pos);
+					} else if (pos != 0) {
+						return -1;
+					}
+					if (pos == length) {
+						// in a route a '/' is always followed by a segment
+						return -1;
+					}
+				} else if (pos < length && path.charAt(pos) == c) {
+					pos++;
+				} else {
+					return -1;
+				}
+			}
+			return pos;
+		}
+	}
+
+	private static int bit(HttpMethod method) {
+		return 1 << method.ordinal();
+	}
+
+	private static int firstIndex(int[] indices) {
+		return indices.length > 0 ? indices[0] : NO_MATCH;
+	}
+
+	private static int methodsOf(RouteEntry[] entries, int[] indices) {
+		int mask = 0;
+		for (int index : indices) {
+			mask |= bit(entries[index].httpMethod);
+		}
+		return mask;
+	}
+
+	/**
+	 * @return the lowest of best and the first of indices having method
+	 */
+	private static int first(RouteEntry[] entries, int[] indices, int method, int best) {
+		for (int index : indices) {
+			if (index >= best) {
+				break;
+			}
+			if (entries[index].httpMethod.ordinal() == method) {
+				return index;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return the index of the best route for acceptType among best and the routes of indices having method
+	 */
+	private static int better(RouteEntry[] entries, int[] indices, int method, int best, String acceptType) {
+		for (int index : indices) {
+			if (entries[index].httpMethod.ordinal() == method) {
+				best = TrieRouteMatcher.better(entries, index, best, acceptType);
+			}
+		}
+		return best;
+	}
+
+	private static long[] mark(RouteEntry[] entries, int[] indices, int methods, long[] matched) {
+		for (int index : indices) {
+			if ((methods & bit(entries[index].httpMethod)) != 0) {
+				if (matched == null) {
+					matched = new long[(entries.length + 63) >>> 6];
+				}
+				matched[index >>> 6] |= 1L << index;
+			}
+		}
+		return matched;
+	}
+
+	// The path is scanned in place, empty segments are skipped as SparkUtils.convertRouteToList does
+
+	private static boolean atSegmentEnd(String path, int pos) {
+		return pos == 0 || pos == path.length() || path.charAt(pos) == '/';
+	}
+
+	private static int skipSlashes(String path, int pos) {
+		while (pos < path.length() && path.charAt(pos) == '/') {
+			pos++;
+		}
+		return pos;
+	}
+
+	private static int segmentEnd(String path, int start) {
+		int end = path.indexOf('/', start);
+		return end < 0 ? path.length() : end;
+	}
+
+}
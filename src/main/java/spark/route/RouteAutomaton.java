@@ -0,0 +1,329 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.route;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import spark.route.TrieRouteMatcher.CompiledNode;
+import spark.route.TrieRouteMatcher.CompiledTrie;
+
+/**
+ * Deterministic automaton compiled from the trie of a {@link TrieRouteMatcher}. A state stands for the set of trie
+ * nodes a path can have reached, so a path is matched with one transition per segment, without the backtracking
+ * between literal and wildcard children the trie walk needs. All states are kept in flat arrays.
+ * <p>
+ * The transitions of a state are an open addressing hash table of the literal segments, probed with the hash of
+ * the segment computed in place in the path, and a transition taken by any other segment (params and splats).
+ */
+final class RouteAutomaton {
+
+    private static final int NO_STATE = -1;
+
+    private static final int METHOD_COUNT = HttpMethod.values().length;
+
+    private static final int[] NO_ENTRIES = new int[0];
+
+    private static final String[] NO_KEYS = new String[0];
+
+    private static final int[] NO_TARGETS = new int[0];
+
+    private final int size;
+    private final int[][] allPaths;
+
+    // by state
+    private final String[][] keys;
+    private final int[][] targets;
+    private final int[] otherTargets;
+
+    // by state and http method (ordinal), see TrieRouteMatcher.CompiledNode
+    private final int[][][] prefixEntries;
+    private final int[][][] exactEntries;
+    private final int[][][] slashEntries;
+
+    private RouteAutomaton(int size, int[][] allPaths, String[][] keys, int[][] targets, int[] otherTargets,
+                           int[][][] prefixEntries, int[][][] exactEntries, int[][][] slashEntries) {
+        this.size = size;
+        this.allPaths = allPaths;
+        this.keys = keys;
+        this.targets = targets;
+        this.otherTargets = otherTargets;
+        this.prefixEntries = prefixEntries;
+        this.exactEntries = exactEntries;
+        this.slashEntries = slashEntries;
+    }
+
+    /**
+     * Compiles the automaton of a trie.
+     *
+     * @param trie      the trie
+     * @param maxStates the maximum number of states, as params next to literals can multiply the states
+     * @return the automaton or null if it would need more than maxStates states
+     */
+    static RouteAutomaton compile(CompiledTrie trie, int maxStates) {
+        List<CompiledNode> nodes = new ArrayList<>();
+        Map<CompiledNode, Integer> nodeIds = new IdentityHashMap<>();
+        number(trie.root, nodes, nodeIds);
+
+        List<BitSet> states = new ArrayList<>();
+        Map<BitSet, Integer> stateIds = new HashMap<>();
+        BitSet start = new BitSet();
+        start.set(nodeIds.get(trie.root));
+        stateId(start, states, stateIds);
+
+        List<String[]> keys = new ArrayList<>();
+        List<int[]> targets = new ArrayList<>();
+        List<Integer> otherTargets = new ArrayList<>();
+        List<int[][]> prefixEntries = new ArrayList<>();
+        List<int[][]> exactEntries = new ArrayList<>();
+        List<int[][]> slashEntries = new ArrayList<>();
+
+        for (int state = 0; state < states.size(); state++) {
+            if (states.size() > maxStates) {
+                return null;
+            }
+            List<CompiledNode> set = new ArrayList<>();
+            BitSet ids = states.get(state);
+            for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+                set.add(nodes.get(id));
+            }
+
+            // any segment can also be matched by the wildcard children
+            BitSet other = new BitSet();
+            for (CompiledNode node : set) {
+                if (node.wildcard != null) {
+                    other.set(nodeIds.get(node.wildcard));
+                }
+            }
+            Map<String, BitSet> literals = new HashMap<>();
+            for (CompiledNode node : set) {
+                for (int i = 0; i < node.literals.length; i++) {
+                    BitSet next = literals.get(node.literals[i]);
+                    if (next == null) {
+                        next = (BitSet) other.clone();
+                        literals.put(node.literals[i], next);
+                    }
+                    next.set(nodeIds.get(node.literalChildren[i]));
+                }
+            }
+
+            String[] table = NO_KEYS;
+            int[] tableTargets = NO_TARGETS;
+            if (!literals.isEmpty()) {
+                int capacity = Integer.highestOneBit(literals.size() * 2 - 1) << 1;
+                table = new String[capacity];
+                tableTargets = new int[capacity];
+                for (Map.Entry<String, BitSet> literal : literals.entrySet()) {
+                    int slot = spread(literal.getKey().hashCode()) & (capacity - 1);
+                    while (table[slot] != null) {
+                        slot = (slot + 1) & (capacity - 1);
+                    }
+                    table[slot] = literal.getKey();
+                    tableTargets[slot] = stateId(literal.getValue(), states, stateIds);
+                }
+            }
+            keys.add(table);
+            targets.add(tableTargets);
+            otherTargets.add(other.isEmpty() ? NO_STATE : stateId(other, states, stateIds));
+
+            int[][] prefix = new int[METHOD_COUNT][];
+            int[][] exact = new int[METHOD_COUNT][];
+            int[][] slash = new int[METHOD_COUNT][];
+            for (int method = 0; method < METHOD_COUNT; method++) {
+                BitSet prefixSet = new BitSet();
+                BitSet exactSet = new BitSet();
+                BitSet slashSet = new BitSet();
+                for (CompiledNode node : set) {
+                    add(prefixSet, node.prefixEntries[method]);
+                    add(exactSet, node.exactEntries[method]);
+                    add(slashSet, node.slashEntries[method]);
+                    if (node.wildcard != null) {
+                        // a trailing slash lets a wildcard at the end of the route match an empty segment
+                        add(slashSet, node.wildcard.prefixEntries[method]);
+                    }
+                }
+                prefix[method] = toArray(prefixSet);
+                exact[method] = toArray(exactSet);
+                slash[method] = toArray(slashSet);
+            }
+            prefixEntries.add(prefix);
+            exactEntries.add(exact);
+            slashEntries.add(slash);
+        }
+
+        int[] others = new int[otherTargets.size()];
+        for (int i = 0; i < others.length; i++) {
+            others[i] = otherTargets.get(i);
+        }
+        return new RouteAutomaton(trie.entries.length, trie.allPaths,
+                                  keys.toArray(new String[keys.size()][]),
+                                  targets.toArray(new int[targets.size()][]),
+                                  others,
+                                  prefixEntries.toArray(new int[prefixEntries.size()][][]),
+                                  exactEntries.toArray(new int[exactEntries.size()][][]),
+                                  slashEntries.toArray(new int[slashEntries.size()][][]));
+    }
+
+    private static void number(CompiledNode node, List<CompiledNode> nodes, Map<CompiledNode, Integer> nodeIds) {
+        nodeIds.put(node, nodes.size());
+        nodes.add(node);
+        for (CompiledNode child : node.literalChildren) {
+            number(child, nodes, nodeIds);
+        }
+        if (node.wildcard != null) {
+            number(node.wildcard, nodes, nodeIds);
+        }
+    }
+
+    private static int stateId(BitSet nodes, List<BitSet> states, Map<BitSet, Integer> stateIds) {
+        Integer id = stateIds.get(nodes);
+        if (id == null) {
+            id = states.size();
+            states.add(nodes);
+            stateIds.put(nodes, id);
+        }
+        return id;
+    }
+
+    private static void add(BitSet set, int[] entries) {
+        for (int index : entries) {
+            set.set(index);
+        }
+    }
+
+    private static int[] toArray(BitSet set) {
+        return set.isEmpty() ? NO_ENTRIES : set.stream().toArray();
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * @return the index of the first registered route of method matching path, or Integer.MAX_VALUE
+     */
+    int firstMatch(HttpMethod method, String path) {
+        int m = method.ordinal();
+        boolean trailingSlash = path.endsWith("/");
+        int best = first(allPaths[m], Integer.MAX_VALUE);
+        int state = 0;
+        int pos = 0;
+        while (true) {
+            best = first(prefixEntries[state][m], best);
+            int start = TrieRouteMatcher.skipSlashes(path, pos);
+            if (start == path.length()) {
+                return first(trailingSlash ? slashEntries[state][m] : exactEntries[state][m], best);
+            }
+            int end = TrieRouteMatcher.segmentEnd(path, start);
+            state = next(state, path, start, end);
+            if (state == NO_STATE) {
+                return best;
+            }
+            pos = end;
+        }
+    }
+
+    /**
+     * @return the index of the route of method matching path that best matches acceptType, or Integer.MAX_VALUE
+     */
+    int bestMatch(HttpMethod method, String path, RouteEntry[] entries, String acceptType) {
+        int m = method.ordinal();
+        boolean trailingSlash = path.endsWith("/");
+        int best = TrieRouteMatcher.better(entries, allPaths[m], Integer.MAX_VALUE, acceptType);
+        int state = 0;
+        int pos = 0;
+        while (true) {
+            best = TrieRouteMatcher.better(entries, prefixEntries[state][m], best, acceptType);
+            int start = TrieRouteMatcher.skipSlashes(path, pos);
+            if (start == path.length()) {
+                int[] end = trailingSlash ? slashEntries[state][m] : exactEntries[state][m];
+                return TrieRouteMatcher.better(entries, end, best, acceptType);
+            }
+            int end = TrieRouteMatcher.segmentEnd(path, start);
+            state = next(state, path, start, end);
+            if (state == NO_STATE) {
+                return best;
+            }
+            pos = end;
+        }
+    }
+
+    /**
+     * @param methods bit mask of the http methods to match
+     * @return the indices of the matching routes as a bitset, or null if none matches
+     */
+    long[] collect(int methods, String path) {
+        boolean trailingSlash = path.endsWith("/");
+        long[] matched = null;
+        for (int bits = methods; bits != 0; bits &= bits - 1) {
+            matched = TrieRouteMatcher.mark(allPaths[Integer.numberOfTrailingZeros(bits)], matched, size);
+        }
+        int state = 0;
+        int pos = 0;
+        while (true) {
+            for (int bits = methods; bits != 0; bits &= bits - 1) {
+                matched = TrieRouteMatcher.mark(prefixEntries[state][Integer.numberOfTrailingZeros(bits)], matched,
+                                                size);
+            }
+            int start = TrieRouteMatcher.skipSlashes(path, pos);
+            if (start == path.length()) {
+                int[][] end = trailingSlash ? slashEntries[state] : exactEntries[state];
+                for (int bits = methods; bits != 0; bits &= bits - 1) {
+                    matched = TrieRouteMatcher.mark(end[Integer.numberOfTrailingZeros(bits)], matched, size);
+                }
+                return matched;
+            }
+            int end = TrieRouteMatcher.segmentEnd(path, start);
+            state = next(state, path, start, end);
+            if (state == NO_STATE) {
+                return matched;
+            }
+            pos = end;
+        }
+    }
+
+    /**
+     * @return the state reached from state by the path segment [start, end), or NO_STATE
+     */
+    private int next(int state, String path, int start, int end) {
+        String[] table = keys[state];
+        if (table.length > 0) {
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + path.charAt(i);
+            }
+            int mask = table.length - 1;
+            int length = end - start;
+            for (int slot = spread(hash) & mask; table[slot] != null; slot = (slot + 1) & mask) {
+                String key = table[slot];
+                if (key.length() == length && path.regionMatches(start, key, 0, length)) {
+                    return targets[state][slot];
+                }
+            }
+        }
+        return otherTargets[state];
+    }
+
+    private static int first(int[] entries, int best) {
+        return entries.length > 0 && entries[0] < best ? entries[0] : best;
+    }
+
+}
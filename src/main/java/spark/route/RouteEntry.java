@@ -2,6 +2,7 @@ package spark.route;
 
 import java.util.List;
 
+import spark.utils.MimeParse;
 import spark.utils.SparkUtils;
 
 /**
@@ -9,93 +10,148 @@ import spark.utils.SparkUtils;
  */
 class RouteEntry {
 
-    HttpMethod httpMethod;
-    String path;
-    String acceptedType;
-    Object target;
+    // kinds of the route parts
+    static final byte LITERAL = 0;
+    static final byte PARAM = 1;
+    static final byte SPLAT = 2;
+    /**
+     * A splat as last part of a route ending with '*', it matches the rest of the path.
+     */
+    static final byte TRAILING_SPLAT = 3;
+
+    final HttpMethod httpMethod;
+    final String path;
+    final String acceptedType;
+    final MimeParse.MimeType acceptedMimeType;
+    final Object target;
+
+    /**
+     * The non-empty parts of the path and their kinds, split once when the route is added.
+     */
+    final String[] parts;
+    final byte[] kinds;
+
+    /**
+     * The lower cased names of the param parts (including ':'), null for the other parts.
+     */
+    final String[] paramNames;
+
+    private final boolean endsWithStar;
+    private final boolean endsWithSlash;
+    private final boolean allPathsFilter;
+
+    RouteEntry(HttpMethod httpMethod, String path, String acceptedType, Object target) {
+        this.httpMethod = httpMethod;
+        this.path = path;
+        this.acceptedType = acceptedType;
+        this.acceptedMimeType = MimeParse.mimeType(acceptedType);
+        this.target = target;
+
+        this.parts = parts(path);
+        this.kinds = kinds(path, parts);
+        this.paramNames = paramNames(parts, kinds);
+        this.endsWithStar = path.endsWith("*");
+        this.endsWithSlash = path.endsWith("/");
+        this.allPathsFilter = (httpMethod == HttpMethod.before || httpMethod == HttpMethod.after)
+                && path.equals(SparkUtils.ALL_PATHS);
+    }
+
+    static String[] parts(String path) {
+        List<String> parts = SparkUtils.convertRouteToList(path);
+        return parts.toArray(new String[parts.size()]);
+    }
+
+    static byte[] kinds(String path, String[] parts) {
+        byte[] kinds = new byte[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            if (SparkUtils.isSplat(parts[i])) {
+                kinds[i] = (i == parts.length - 1 && path.endsWith("*")) ? TRAILING_SPLAT : SPLAT;
+            } else if (SparkUtils.isParam(parts[i])) {
+                kinds[i] = PARAM;
+            } else {
+                kinds[i] = LITERAL;
+            }
+        }
+        return kinds;
+    }
+
+    static String[] paramNames(String[] parts, byte[] kinds) {
+        String[] names = new String[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            if (kinds[i] == PARAM) {
+                names[i] = parts[i].toLowerCase();
+            }
+        }
+        return names;
+    }
 
     boolean matches(HttpMethod httpMethod, String path) {
-        if ((httpMethod == HttpMethod.before || httpMethod == HttpMethod.after)
-                && (this.httpMethod == httpMethod)
-                && this.path.equals(SparkUtils.ALL_PATHS)) {
+        return matches(httpMethod, new PathSegments(path));
+    }
+
+    boolean matches(HttpMethod httpMethod, PathSegments path) {
+        if (this.httpMethod != httpMethod) {
+            return false;
+        }
+        if (allPathsFilter) {
             // Is filter and matches all
             return true;
         }
-        boolean match = false;
-        if (this.httpMethod == httpMethod) {
-            match = matchPath(path);
-        }
-        return match;
+        return matchPath(path);
     }
 
-    private boolean matchPath(String path) { // NOSONAR
-        if (!this.path.endsWith("*") && ((path.endsWith("/") && !this.path.endsWith("/")) // NOSONAR
-                || (this.path.endsWith("/") && !path.endsWith("/")))) {
+    private boolean matchPath(PathSegments path) {
+        if (!endsWithStar && path.trailingSlash != endsWithSlash) {
             // One and not both ends with slash
             return false;
         }
-        if (this.path.equals(path)) {
+        if (this.path.equals(path.path)) {
             // Paths are the same
             return true;
         }
 
-        // check params
-        List<String> thisPathList = SparkUtils.convertRouteToList(this.path);
-        List<String> pathList = SparkUtils.convertRouteToList(path);
-
-        int thisPathSize = thisPathList.size();
-        int pathSize = pathList.size();
+        int thisPathSize = parts.length;
+        int pathSize = path.size;
 
         if (thisPathSize == pathSize) {
-            for (int i = 0; i < thisPathSize; i++) {
-                String thisPathPart = thisPathList.get(i);
-                String pathPart = pathList.get(i);
+            return matchParts(path);
+        }
+        // Number of "path parts" not the same
+        // check wild card:
+        if (endsWithStar) {
+            if (pathSize == (thisPathSize - 1) && path.trailingSlash) {
+                // Hack for making wildcards work with trailing slash: the missing part is matched as empty
+                pathSize += 2;
+            }
+            if (thisPathSize < pathSize) {
+                return matchParts(path);
+            }
+        }
+        return false;
+    }
 
-                if ((i == thisPathSize - 1) && (thisPathPart.equals("*") && this.path.endsWith("*"))) {
+    /**
+     * Matches the parts of the route with the first segments of the path, a part beyond the end of the path is
+     * matched against an empty segment.
+     */
+    private boolean matchParts(PathSegments path) {
+        for (int i = 0; i < parts.length; i++) {
+            switch (kinds[i]) {
+                case TRAILING_SPLAT:
                     // wildcard match
                     return true;
-                }
-
-                if ((!thisPathPart.startsWith(":"))
-                        && !thisPathPart.equals(pathPart)
-                        && !thisPathPart.equals("*")) {
-                    return false;
-                }
-            }
-            // All parts matched
-            return true;
-        } else {
-            // Number of "path parts" not the same
-            // check wild card:
-            if (this.path.endsWith("*")) {
-                if (pathSize == (thisPathSize - 1) && (path.endsWith("/"))) {
-                    // Hack for making wildcards work with trailing slash
-                    pathList.add("");
-                    pathList.add("");
-                    pathSize += 2;
-                }
-
-                if (thisPathSize < pathSize) {
-                    for (int i = 0; i < thisPathSize; i++) {
-                        String thisPathPart = thisPathList.get(i);
-                        String pathPart = pathList.get(i);
-                        if (thisPathPart.equals("*") && (i == thisPathSize - 1) && this.path.endsWith("*")) {
-                            // wildcard match
-                            return true;
-                        }
-                        if (!thisPathPart.startsWith(":")
-                                && !thisPathPart.equals(pathPart)
-                                && !thisPathPart.equals("*")) {
-                            return false;
-                        }
+                case LITERAL:
+                    if (i >= path.size || !path.segmentEquals(i, parts[i])) {
+                        return false;
                     }
-                    // All parts matched
-                    return true;
-                }
-                // End check wild card
+                    break;
+                default:
+                    // params and splats match any segment
+                    break;
             }
-            return false;
         }
+        // All parts matched
+        return true;
     }
 
     public String toString() {
@@ -16,6 +16,12 @@
  */
 package spark.route;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * @author Per Wendel
  */
@@ -27,6 +33,14 @@ public class RouteMatch {
     private String requestURI;
     private String acceptType;
 
+    // The matched pattern and the request path split into segments, params and splats are read from them on demand
+    private final byte[] kinds;
+    private final String[] paramNames;
+    private final PathSegments segments;
+
+    private volatile Map<String, String> params;
+    private volatile List<String> splat;
+
     public RouteMatch(HttpMethod httpMethod, Object target, String matchUri, String requestUri, String acceptType) {
         super();
         this.httpMethod = httpMethod;
@@ -34,8 +48,27 @@ public class RouteMatch {
         this.matchUri = matchUri;
         this.requestURI = requestUri;
         this.acceptType = acceptType;
+
+        String[] parts = RouteEntry.parts(matchUri);
+        this.kinds = RouteEntry.kinds(matchUri, parts);
+        this.paramNames = RouteEntry.paramNames(parts, kinds);
+        this.segments = new PathSegments(requestUri);
     }
 
+    /**
+     * Constructor for a match found by a route matcher, reusing the route's split pattern and the path segments
+     * split while matching.
+     */
+    RouteMatch(HttpMethod httpMethod, RouteEntry entry, PathSegments segments, String acceptType) {
+        this.httpMethod = httpMethod;
+        this.target = entry.target;
+        this.matchUri = entry.path;
+        this.requestURI = segments.path;
+        this.acceptType = acceptType;
+        this.kinds = entry.kinds;
+        this.paramNames = entry.paramNames;
+        this.segments = segments;
+    }
 
     /**
      * @return the accept type
@@ -75,4 +108,70 @@ public class RouteMatch {
     }
 
 
+    /**
+     * Returns the value of a route param.
+     *
+     * @param name the lower cased param name, including ':'
+     * @return the value or null if the route has no such param
+     */
+    public String getParam(String name) {
+        // a name used twice takes its last value, like in getParams
+        for (int i = Math.min(kinds.length, segments.size) - 1; i >= 0; i--) {
+            if (name.equals(paramNames[i])) {
+                return segment(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the route params by lower cased name, including ':'
+     */
+    public Map<String, String> getParams() {
+        Map<String, String> result = params;
+        if (result == null) {
+            Map<String, String> values = new HashMap<>();
+            for (int i = 0; i < kinds.length && i < segments.size; i++) {
+                if (paramNames[i] != null) {
+                    values.put(paramNames[i], segment(i));
+                }
+            }
+            result = Collections.unmodifiableMap(values);
+            params = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return the values of the splats, a splat ending the route also gets the remaining segments of the path
+     */
+    public List<String> getSplat() {
+        List<String> result = splat;
+        if (result == null) {
+            int nbrOfRequestParts = segments.size;
+            int nbrOfMatchedParts = kinds.length;
+            List<String> values = new ArrayList<>();
+            for (int i = 0; i < nbrOfRequestParts && i < nbrOfMatchedParts; i++) {
+                if (kinds[i] == RouteEntry.SPLAT || kinds[i] == RouteEntry.TRAILING_SPLAT) {
+                    if (nbrOfRequestParts != nbrOfMatchedParts && i == nbrOfMatchedParts - 1) {
+                        StringBuilder splatParam = new StringBuilder(segment(i));
+                        for (int j = i + 1; j < nbrOfRequestParts; j++) {
+                            splatParam.append('/').append(segments.path, segments.start(j), segments.end(j));
+                        }
+                        values.add(splatParam.toString());
+                    } else {
+                        values.add(segment(i));
+                    }
+                }
+            }
+            result = Collections.unmodifiableList(values);
+            splat = result;
+        }
+        return result;
+    }
+
+    private String segment(int i) {
+        return segments.path.substring(segments.start(i), segments.end(i));
+    }
+
 }
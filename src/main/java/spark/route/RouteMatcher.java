@@ -4,17 +4,18 @@ package spark.route;
  * @author amarseillan
  */
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-
-import spark.utils.MimeParse;
 
 public abstract class RouteMatcher {
 	
 	private static final org.slf4j.Logger LOG = org.slf4j.LoggerFactory.getLogger(RouteMatcher.class);
     private static final char SINGLE_QUOTE = '\'';
 
+    // depth of nested batches, guarded by this
+    private int batchDepth;
+
+    private volatile boolean frozen;
+
 	   /**
      * Parse and validates a route and adds it
      *
@@ -47,6 +48,70 @@ public abstract class RouteMatcher {
     }
     
     abstract void addRoute(HttpMethod method, String route, String acceptType, Object target);
+
+    /**
+     * Runs route registrations as one change of the route table. Lookups keep using the routes from before the
+     * batch until it ends and then see all added routes at once, so the route table is republished only once.
+     * Route registrations from other threads wait until the batch has ended.
+     *
+     * @param registrations adds the routes, e.g. by calling Spark.get(...)
+     */
+    public synchronized void batch(Runnable registrations) {
+        batchDepth++;
+        try {
+            registrations.run();
+        } finally {
+            batchDepth--;
+            if (batchDepth == 0) {
+                publishRoutes();
+            }
+        }
+    }
+
+    /**
+     * Tells the matcher that the routes are complete, so that it compiles them into the form that is fastest to
+     * match. Routes can still be added afterwards, the matcher stays frozen and compiles them into that form too
+     * when they are published.
+     */
+    public synchronized void freeze() {
+        frozen = true;
+        compileRoutes();
+    }
+
+    /**
+     * @return true if the routes have been frozen, routes added since then are compiled the same way
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Compiles the routes added so far for lookups, called holding the lock of this matcher.
+     */
+    void compileRoutes() {
+        // nothing to compile by default
+    }
+
+    /**
+     * @return the number of times the routes have been compiled and published to the lookups
+     */
+    int snapshots() {
+        return 0;
+    }
+
+    /**
+     * @return true while a batch is running, must be called holding the lock of this matcher
+     */
+    boolean isBatching() {
+        return batchDepth > 0;
+    }
+
+    /**
+     * Makes the routes added so far visible to lookups, called holding the lock of this matcher.
+     */
+    void publishRoutes() {
+        // nothing to publish by default
+    }
     
     /**
      * finds target for a requested route
@@ -67,23 +132,45 @@ public abstract class RouteMatcher {
      * @return the targets
      */
     public abstract List<RouteMatch> findTargetsForRequestedRoute(HttpMethod httpMethod, String path, String acceptType);
-    
+
+    /**
+     * Finds everything to execute for a request: the before filters, the route (including whether a GET route
+     * provides the default mapping of a HEAD request) and the after filters.
+     *
+     * @param httpMethod the http method of the request
+     * @param path       the path
+     * @param acceptType the accept type
+     * @return the plan
+     */
+    public RoutePlan findPlanForRequestedRoute(HttpMethod httpMethod, String path, String acceptType) {
+        List<RouteMatch> beforeFilters = findTargetsForRequestedRoute(HttpMethod.before, path, acceptType);
+        RouteMatch route = findTargetForRequestedRoute(httpMethod, path, acceptType);
+        boolean getFallback = route == null && httpMethod == HttpMethod.head
+                && findTargetForRequestedRoute(HttpMethod.get, path, acceptType) != null;
+        List<RouteMatch> afterFilters = findTargetsForRequestedRoute(HttpMethod.after, path, acceptType);
+        return new RoutePlan(beforeFilters, route, getFallback, afterFilters);
+    }
+
     /**
      * ¨Clear all routes
      */
     public abstract void clearRoutes();
     
-    // TODO: I believe this feature has impacted performance. Optimization?
-    RouteEntry findTargetWithGivenAcceptType(List<RouteEntry> routeMatches, String acceptType) {
+    /**
+     * Picks the route whose accept type best matches the Accept header. The accept types are parsed when the
+     * routes are added and the results of negotiating them are cached, so this is cheap for headers seen before.
+     * When routes match equally well the one added first is picked.
+     */
+    static RouteEntry findTargetWithGivenAcceptType(List<RouteEntry> routeMatches, String acceptType) {
         if (acceptType != null && routeMatches.size() > 0) {
-            Map<String, RouteEntry> acceptedMimeTypes = getAcceptedMimeTypes(routeMatches);
-            String bestMatch = MimeParse.bestMatch(acceptedMimeTypes.keySet(), acceptType);
-
-            if (routeWithGivenAcceptType(bestMatch)) {
-                return acceptedMimeTypes.get(bestMatch);
-            } else {
-                return null;
+            RouteEntry best = routeMatches.get(0);
+            for (int i = 1; i < routeMatches.size(); i++) {
+                RouteEntry routeEntry = routeMatches.get(i);
+                if (routeEntry.acceptedMimeType.compareMatch(best.acceptedMimeType, acceptType) > 0) {
+                    best = routeEntry;
+                }
             }
+            return best.acceptedMimeType.isAcceptable(acceptType) ? best : null;
         } else {
             if (routeMatches.size() > 0) {
                 return routeMatches.get(0);
@@ -92,26 +179,9 @@ public abstract class RouteMatcher {
 
         return null;
     }
-    
-    boolean routeWithGivenAcceptType(String bestMatch) {
-        return !MimeParse.NO_MIME_TYPE.equals(bestMatch);
-    }
-    
-    //can be cached? I don't think so.
-    private Map<String, RouteEntry> getAcceptedMimeTypes(List<RouteEntry> routes) {
-        Map<String, RouteEntry> acceptedTypes = new HashMap<>();
-
-        for (RouteEntry routeEntry : routes) {
-            if (!acceptedTypes.containsKey(routeEntry.acceptedType)) {
-                acceptedTypes.put(routeEntry.acceptedType, routeEntry);
-            }
-        }
 
-        return acceptedTypes;
-    }
-    
     public enum MatcherImplementation {
-    	list, trie
+    	list, trie, radix, compiled
     }
     
 }
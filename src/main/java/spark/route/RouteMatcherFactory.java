@@ -33,6 +33,7 @@ public final class RouteMatcherFactory {
 
 	private static RouteMatcher routeMatcher = null;
 	public static MatcherImplementation impl = MatcherImplementation.list;
+	public static int cacheSize = 0;
 
 	private RouteMatcherFactory() {
 	}
@@ -47,9 +48,18 @@ public final class RouteMatcherFactory {
 				case trie:
 					routeMatcher = new TrieRouteMatcher();
 					break;
+				case radix:
+					routeMatcher = new RadixRouteMatcher();
+					break;
+				case compiled:
+					routeMatcher = new CompiledRouteMatcher();
+					break;
 				default:
 					throw new IllegalArgumentException();
-		}
+			}
+			if (cacheSize > 0) {
+				routeMatcher = new CachingRouteMatcher(routeMatcher, cacheSize);
+			}
 		}
 		return routeMatcher;
 	}
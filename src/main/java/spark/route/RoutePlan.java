@@ -0,0 +1,76 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.route;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Everything that has to be executed for a request: the before filters, the route and the after filters.
+ */
+public class RoutePlan {
+
+    private final List<RouteMatch> beforeFilters;
+    private final RouteMatch route;
+    private final boolean getFallback;
+    private final List<RouteMatch> afterFilters;
+
+    /**
+     * Constructor
+     *
+     * @param beforeFilters the matching before filters, in execution order
+     * @param route         the matching route or null
+     * @param getFallback   true if the request is a HEAD request without route but a GET route matches
+     * @param afterFilters  the matching after filters, in execution order
+     */
+    public RoutePlan(List<RouteMatch> beforeFilters, RouteMatch route, boolean getFallback,
+                     List<RouteMatch> afterFilters) {
+        this.beforeFilters = Collections.unmodifiableList(beforeFilters);
+        this.route = route;
+        this.getFallback = getFallback;
+        this.afterFilters = Collections.unmodifiableList(afterFilters);
+    }
+
+    /**
+     * @return the before filters
+     */
+    public List<RouteMatch> getBeforeFilters() {
+        return beforeFilters;
+    }
+
+    /**
+     * @return the route or null if no route matches
+     */
+    public RouteMatch getRoute() {
+        return route;
+    }
+
+    /**
+     * @return true if there is no HEAD route but a GET route that provides the default HEAD mapping
+     */
+    public boolean hasGetFallback() {
+        return getFallback;
+    }
+
+    /**
+     * @return the after filters
+     */
+    public List<RouteMatch> getAfterFilters() {
+        return afterFilters;
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.route;
+
+import java.util.Arrays;
+
+/**
+ * The routes of a route matcher and the form they are compiled into for lookups. The routes are compiled by the
+ * writer when it publishes them, holding the lock of the route matcher, and the compiled form is then handed to
+ * the lookups through a volatile field, so lookups never lock and never compile. Adding routes one by one compiles
+ * them once per route, registrations in bulk should use {@link RouteMatcher#batch(Runnable)} to compile once.
+ *
+ * @param <T> the compiled form
+ */
+final class RouteTable<T> {
+
+    private static final RouteEntry[] NO_ROUTES = new RouteEntry[0];
+
+    /**
+     * Compiles the routes for lookups.
+     */
+    interface Compiler<T> {
+
+        /**
+         * @param entries the routes in registration order
+         * @param frozen  true if the routes are frozen and should be compiled into their fastest form
+         * @return the compiled form
+         */
+        T compile(RouteEntry[] entries, boolean frozen);
+
+    }
+
+    private final Compiler<T> compiler;
+
+    /**
+     * The added routes in the first size slots, guarded by the lock of the route matcher.
+     */
+    private RouteEntry[] routes = NO_ROUTES;
+    private int size;
+
+    /**
+     * The number of times the routes have been compiled, guarded by the lock of the route matcher.
+     */
+    private int snapshots;
+
+    /**
+     * The compiled form of the published routes, read by the lookups.
+     */
+    private volatile T compiled;
+
+    RouteTable(Compiler<T> compiler) {
+        this.compiler = compiler;
+        this.compiled = compiler.compile(NO_ROUTES, false);
+    }
+
+    /**
+     * Adds a route, it is not visible to lookups until published. Must be called holding the lock of the route
+     * matcher.
+     */
+    void add(RouteEntry entry) {
+        if (size == routes.length) {
+            routes = Arrays.copyOf(routes, Math.max(16, size * 2));
+        }
+        routes[size++] = entry;
+    }
+
+    /**
+     * Removes all routes, lookups see them until published. Must be called holding the lock of the route matcher.
+     */
+    void clear() {
+        routes = NO_ROUTES;
+        size = 0;
+    }
+
+    /**
+     * Compiles the added routes and makes them visible to the lookups. Must be called holding the lock of the
+     * route matcher.
+     *
+     * @param frozen true if the routes are frozen
+     */
+    void publish(boolean frozen) {
+        compiled = compiler.compile(size == 0 ? NO_ROUTES : Arrays.copyOf(routes, size), frozen);
+        snapshots++;
+    }
+
+    /**
+     * @return the compiled form of the published routes
+     */
+    T get() {
+        return compiled;
+    }
+
+    /**
+     * @return the number of times the routes have been published, must be called holding the lock of the route
+     * matcher
+     */
+    int snapshots() {
+        return snapshots;
+    }
+
+}
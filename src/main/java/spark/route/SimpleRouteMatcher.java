@@ -17,11 +17,8 @@
 package spark.route;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
-import spark.utils.MimeParse;
-
 /**
  * Simple route matcher that is supposed to work exactly as Sinatra's
  *
@@ -31,13 +28,18 @@ public class SimpleRouteMatcher extends RouteMatcher{
 
     private static final org.slf4j.Logger LOG = org.slf4j.LoggerFactory.getLogger(SimpleRouteMatcher.class);
 
-    private List<RouteEntry> routes;
+    /**
+     * The routes and the results for the paths of the literal routes, consulted before the routes are matched.
+     * The index is built again by the writer when the routes change. Guarded by this, except for the lookups.
+     */
+    private final RouteTable<StaticRouteIndex> table =
+            new RouteTable<>((entries, frozen) -> new StaticRouteIndex(entries));
 
     /**
      * Constructor
      */
     public SimpleRouteMatcher() {
-        routes = new ArrayList<RouteEntry>();
+        // nothing to initialize
     }
 
     /**
@@ -50,9 +52,15 @@ public class SimpleRouteMatcher extends RouteMatcher{
      */
     @Override
     public RouteMatch findTargetForRequestedRoute(HttpMethod httpMethod, String path, String acceptType) {
-        List<RouteEntry> routeEntries = this.findTargetsForRequestedRoute(httpMethod, path);
+        StaticRouteIndex staticRoutes = table.get();
+        StaticRouteIndex.StaticPath staticPath = staticRoutes.get(path);
+        if (staticPath != null) {
+            return staticPath.findTarget(httpMethod, acceptType);
+        }
+        PathSegments segments = new PathSegments(path);
+        List<RouteEntry> routeEntries = findTargetsForRequestedRoute(staticRoutes, httpMethod, segments);
         RouteEntry entry = findTargetWithGivenAcceptType(routeEntries, acceptType);
-        return entry != null ? new RouteMatch(httpMethod, entry.target, entry.path, path, acceptType) : null;
+        return entry != null ? new RouteMatch(httpMethod, entry, segments, acceptType) : null;
     }
 
     /**
@@ -65,30 +73,47 @@ public class SimpleRouteMatcher extends RouteMatcher{
      */
     @Override
     public List<RouteMatch> findTargetsForRequestedRoute(HttpMethod httpMethod, String path, String acceptType) {
+        StaticRouteIndex staticRoutes = table.get();
+        StaticRouteIndex.StaticPath staticPath = staticRoutes.get(path);
+        if (staticPath != null) {
+            return staticPath.findTargets(httpMethod, acceptType);
+        }
         List<RouteMatch> matchSet = new ArrayList<>();
-        List<RouteEntry> routeEntries = findTargetsForRequestedRoute(httpMethod, path);
+        PathSegments segments = new PathSegments(path);
+        List<RouteEntry> routeEntries = findTargetsForRequestedRoute(staticRoutes, httpMethod, segments);
 
         for (RouteEntry routeEntry : routeEntries) {
             if (acceptType != null) {
-                String bestMatch = MimeParse.bestMatch(Arrays.asList(routeEntry.acceptedType), acceptType);
-
-                if (routeWithGivenAcceptType(bestMatch)) {
-                    matchSet.add(new RouteMatch(httpMethod, routeEntry.target, routeEntry.path, path, acceptType));
+                if (routeEntry.acceptedMimeType.isAcceptable(acceptType)) {
+                    matchSet.add(new RouteMatch(httpMethod, routeEntry, segments, acceptType));
                 }
             } else {
-                matchSet.add(new RouteMatch(httpMethod, routeEntry.target, routeEntry.path, path, acceptType));
+                matchSet.add(new RouteMatch(httpMethod, routeEntry, segments, acceptType));
             }
         }
 
         return matchSet;
     }
 
+    @Override
+    public RoutePlan findPlanForRequestedRoute(HttpMethod httpMethod, String path, String acceptType) {
+        StaticRouteIndex staticRoutes = table.get();
+        StaticRouteIndex.StaticPath staticPath = staticRoutes.get(path);
+        if (staticPath != null) {
+            return staticPath.findPlan(httpMethod, acceptType);
+        }
+        return super.findPlanForRequestedRoute(httpMethod, path, acceptType);
+    }
+
     /**
      * ¨Clear all routes
      */
     @Override
-    public void clearRoutes() {
-        routes.clear();
+    public synchronized void clearRoutes() {
+        table.clear();
+        if (!isBatching()) {
+            publishRoutes();
+        }
     }
 
     //////////////////////////////////////////////////
@@ -96,22 +121,34 @@ public class SimpleRouteMatcher extends RouteMatcher{
     //////////////////////////////////////////////////
 
     @Override
-    void addRoute(HttpMethod method, String url, String acceptedType, Object target) {
-        RouteEntry entry = new RouteEntry();
-        entry.httpMethod = method;
-        entry.path = url;
-        entry.target = target;
-        entry.acceptedType = acceptedType;
+    synchronized void addRoute(HttpMethod method, String url, String acceptedType, Object target) {
+        RouteEntry entry = new RouteEntry(method, url, acceptedType, target);
         LOG.debug("Adds route: " + entry);
         // Adds to end of list
-        routes.add(entry);
+        table.add(entry);
+        if (!isBatching()) {
+            publishRoutes();
+        }
+    }
+
+    @Override
+    void publishRoutes() {
+        table.publish(isFrozen());
+    }
+
+    @Override
+    synchronized int snapshots() {
+        return table.snapshots();
     }
 
 
-    private List<RouteEntry> findTargetsForRequestedRoute(HttpMethod httpMethod, String path) {
+    private static List<RouteEntry> findTargetsForRequestedRoute(StaticRouteIndex staticRoutes,
+                                                                 HttpMethod httpMethod,
+                                                                 PathSegments segments) {
+        // the path is split once by the caller, not once per route
         List<RouteEntry> matchSet = new ArrayList<RouteEntry>();
-        for (RouteEntry entry : routes) {
-            if (entry.matches(httpMethod, path)) {
+        for (RouteEntry entry : staticRoutes.entries()) {
+            if (entry.matches(httpMethod, segments)) {
                 matchSet.add(entry);
             }
         }
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.route;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import spark.utils.SparkUtils;
+
+/**
+ * Index of the results for the paths of the literal routes (routes without params and splats, e.g. /health).
+ * A request for exactly such a path is answered with one hash lookup, without splitting the path or matching
+ * it. The results are computed when the index is built, by matching the path against all routes, so they include
+ * the params, splat and filter routes matching the path too and the precedence is the same as when matching.
+ * Immutable, route matchers build a new index whenever they publish their routes.
+ */
+final class StaticRouteIndex {
+
+    static final StaticRouteIndex EMPTY = new StaticRouteIndex(new RouteEntry[0]);
+
+    private static final HttpMethod[] METHODS = HttpMethod.values();
+    private static final int METHOD_COUNT = METHODS.length;
+
+    private final RouteEntry[] entries;
+
+    private final Map<String, StaticPath> paths = new HashMap<>();
+
+    /**
+     * @param entries all routes, in registration order
+     */
+    StaticRouteIndex(RouteEntry[] entries) {
+        this.entries = entries;
+        // literal routes only match paths having the same segments, so they are grouped by their joined segments
+        // and only the other routes are matched against the paths. Routes not ending with '*' only match paths
+        // having as many segments as they have parts, they are indexed by that count and their last literal part,
+        // the routes ending with '*' by their first part, so each path is only matched against the routes that
+        // can match it
+        Map<String, List<Integer>> literals = new HashMap<>();
+        Map<String, String> pathKeys = new HashMap<>();
+        Map<String, List<Integer>> othersByLastPart = new HashMap<>();
+        Map<String, List<Integer>> othersByFirstPart = new HashMap<>();
+        List<Integer> othersForAnyPath = new ArrayList<>();
+        for (int i = 0; i < entries.length; i++) {
+            RouteEntry entry = entries[i];
+            String key = literalKey(entry);
+            if (key != null) {
+                add(literals, key, i);
+                pathKeys.putIfAbsent(entry.path, key);
+            } else if (entry.path.equals(SparkUtils.ALL_PATHS)) {
+                othersForAnyPath.add(i);
+            } else if (!entry.path.endsWith("*")) {
+                add(othersByLastPart, partKey(entry.parts.length, entry.parts, entry.kinds), i);
+            } else if (entry.kinds.length > 0 && entry.kinds[0] == RouteEntry.LITERAL) {
+                add(othersByFirstPart, entry.parts[0], i);
+            } else {
+                othersForAnyPath.add(i);
+            }
+        }
+        for (Map.Entry<String, String> pathKey : pathKeys.entrySet()) {
+            RouteEntry literal = entries[literals.get(pathKey.getValue()).get(0)];
+            String[] parts = literal.parts;
+            List<Integer> others = new ArrayList<>(othersForAnyPath);
+            addAll(others, othersByLastPart.get(partKey(parts.length, parts, null)));
+            for (int part = 0; part < parts.length; part++) {
+                addAll(others, othersByLastPart.get(parts.length + "/" + part + "/" + parts[part]));
+            }
+            if (parts.length > 0) {
+                addAll(others, othersByFirstPart.get(parts[0]));
+            }
+            Collections.sort(others);
+            paths.put(pathKey.getKey(), new StaticPath(entries, literals.get(pathKey.getValue()), others,
+                                                       pathKey.getKey()));
+        }
+    }
+
+    /**
+     * @param kinds the kinds of the parts, null for a path whose parts are all literal
+     * @return the key of the routes with size parts and the same last literal part at the same position
+     */
+    private static String partKey(int size, String[] parts, byte[] kinds) {
+        if (kinds == null) {
+            return Integer.toString(size);
+        }
+        for (int part = parts.length - 1; part >= 0; part--) {
+            if (kinds[part] == RouteEntry.LITERAL) {
+                return size + "/" + part + "/" + parts[part];
+            }
+        }
+        // without literal part the route may match any path having as many segments
+        return Integer.toString(size);
+    }
+
+    private static void add(Map<String, List<Integer>> groups, String key, int index) {
+        List<Integer> group = groups.get(key);
+        if (group == null) {
+            group = new ArrayList<>();
+            groups.put(key, group);
+        }
+        group.add(index);
+    }
+
+    private static void addAll(List<Integer> others, List<Integer> group) {
+        if (group != null) {
+            others.addAll(group);
+        }
+    }
+
+    /**
+     * @return the results for path or null if path is not the path of a literal route
+     */
+    StaticPath get(String path) {
+        return paths.get(path);
+    }
+
+    /**
+     * @return all routes the index was built from, in registration order
+     */
+    RouteEntry[] entries() {
+        return entries;
+    }
+
+    private static String literalKey(RouteEntry entry) {
+        if (entry.path.endsWith("*") || entry.path.equals(SparkUtils.ALL_PATHS)) {
+            return null;
+        }
+        for (byte kind : entry.kinds) {
+            if (kind != RouteEntry.LITERAL) {
+                return null;
+            }
+        }
+        StringBuilder key = new StringBuilder();
+        for (String part : entry.parts) {
+            key.append('/').append(part);
+        }
+        return entry.path.endsWith("/") ? key.append('/').toString() : key.toString();
+    }
+
+    /**
+     * The routes matching one path, by http method.
+     */
+    static final class StaticPath {
+
+        private final PathSegments segments;
+
+        /**
+         * The matching routes of each http method (by ordinal), in registration order.
+         */
+        private final List<RouteEntry>[] routes;
+
+        /**
+         * The results of the lookups without accept type, shared by all requests.
+         */
+        private final RouteMatch[] firstMatches;
+        private final List<RouteMatch>[] allMatches;
+
+        /**
+         * The filter chains and routes of the lookups without accept type, resolved once for each http method.
+         */
+        private final RoutePlan[] plans;
+
+        /**
+         * @param literals the indices of the literal routes matching path
+         * @param others   the indices of the routes that are not literal and may match path, in registration order
+         */
+        @SuppressWarnings("unchecked")
+        StaticPath(RouteEntry[] entries, List<Integer> literals, List<Integer> others, String path) {
+            this.segments = new PathSegments(path);
+            this.routes = new List[METHOD_COUNT];
+            this.firstMatches = new RouteMatch[METHOD_COUNT];
+            this.allMatches = new List[METHOD_COUNT];
+            this.plans = new RoutePlan[METHOD_COUNT];
+
+            // created for the methods having matching routes only
+            List<RouteEntry>[] byMethod = new List[METHOD_COUNT];
+            // both are in registration order, merged they stay in it
+            int literal = 0;
+            int other = 0;
+            while (literal < literals.size() || other < others.size()) {
+                RouteEntry entry;
+                if (other == others.size()
+                        || (literal < literals.size() && literals.get(literal) < others.get(other))) {
+                    entry = entries[literals.get(literal++)];
+                } else {
+                    entry = entries[others.get(other++)];
+                    if (!entry.matches(entry.httpMethod, segments)) {
+                        continue;
+                    }
+                }
+                int method = entry.httpMethod.ordinal();
+                if (byMethod[method] == null) {
+                    byMethod[method] = new ArrayList<>();
+                }
+                byMethod[method].add(entry);
+            }
+
+            for (HttpMethod method : METHODS) {
+                List<RouteEntry> matching = byMethod[method.ordinal()];
+                if (matching == null) {
+                    routes[method.ordinal()] = Collections.emptyList();
+                    allMatches[method.ordinal()] = Collections.emptyList();
+                    continue;
+                }
+                List<RouteMatch> matches = new ArrayList<>(matching.size());
+                for (RouteEntry entry : matching) {
+                    matches.add(new RouteMatch(method, entry, segments, null));
+                }
+                routes[method.ordinal()] = Collections.unmodifiableList(matching);
+                allMatches[method.ordinal()] = Collections.unmodifiableList(matches);
+                firstMatches[method.ordinal()] = matches.get(0);
+            }
+            // the methods without route share their plan, it only holds the filters
+            RoutePlan filtersOnly = null;
+            for (HttpMethod method : METHODS) {
+                boolean withoutRoute = firstMatches[method.ordinal()] == null
+                        && (method != HttpMethod.head || firstMatches[HttpMethod.get.ordinal()] == null);
+                if (withoutRoute && filtersOnly != null) {
+                    plans[method.ordinal()] = filtersOnly;
+                    continue;
+                }
+                plans[method.ordinal()] = resolvePlan(method, null);
+                if (withoutRoute) {
+                    filtersOnly = plans[method.ordinal()];
+                }
+            }
+        }
+
+        /**
+         * @see RouteMatcher#findTargetForRequestedRoute(HttpMethod, String, String)
+         */
+        RouteMatch findTarget(HttpMethod httpMethod, String acceptType) {
+            if (acceptType == null) {
+                return firstMatches[httpMethod.ordinal()];
+            }
+            RouteEntry entry = RouteMatcher.findTargetWithGivenAcceptType(routes[httpMethod.ordinal()], acceptType);
+            return entry != null ? new RouteMatch(httpMethod, entry, segments, acceptType) : null;
+        }
+
+        /**
+         * @see RouteMatcher#findTargetsForRequestedRoute(HttpMethod, String, String)
+         */
+        List<RouteMatch> findTargets(HttpMethod httpMethod, String acceptType) {
+            if (acceptType == null) {
+                return allMatches[httpMethod.ordinal()];
+            }
+            List<RouteEntry> matching = routes[httpMethod.ordinal()];
+            List<RouteMatch> matchSet = new ArrayList<>(matching.size());
+            for (RouteEntry entry : matching) {
+                if (entry.acceptedMimeType.isAcceptable(acceptType)) {
+                    matchSet.add(new RouteMatch(httpMethod, entry, segments, acceptType));
+                }
+            }
+            return matchSet;
+        }
+
+        /**
+         * @see RouteMatcher#findPlanForRequestedRoute(HttpMethod, String, String)
+         */
+        RoutePlan findPlan(HttpMethod httpMethod, String acceptType) {
+            if (acceptType == null) {
+                return plans[httpMethod.ordinal()];
+            }
+            return resolvePlan(httpMethod, acceptType);
+        }
+
+        private RoutePlan resolvePlan(HttpMethod httpMethod, String acceptType) {
+            RouteMatch route = findTarget(httpMethod, acceptType);
+            boolean getFallback = route == null && httpMethod == HttpMethod.head
+                    && findTarget(HttpMethod.get, acceptType) != null;
+            return new RoutePlan(findTargets(HttpMethod.before, acceptType), route, getFallback,
+                                 findTargets(HttpMethod.after, acceptType));
+        }
+    }
+
+}
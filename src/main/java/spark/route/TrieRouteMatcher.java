@@ -1,154 +1,625 @@
 package spark.route;
 
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
-import spark.FilterImpl;
-import spark.RouteImpl;
-import spark.utils.MimeParse;
 import spark.utils.SparkUtils;
-import spark.utils.StringUtils;
 
+/**
+ * Route matcher backed by a trie of path segments. It matches exactly what {@link SimpleRouteMatcher} matches,
+ * in the same (registration) order, without testing every registered route. The routes of all http methods
+ * share the trie, so the before filters, the route and the after filters of a request are found in one walk.
+ * Freezing the routes compiles the trie into a {@link RouteAutomaton}, which matches without backtracking.
+ *
+ * @author amarseillan
+ */
 public class TrieRouteMatcher extends RouteMatcher{
-	
+
+	private static final org.slf4j.Logger LOG = org.slf4j.LoggerFactory.getLogger(TrieRouteMatcher.class);
+
+	private static final int NO_MATCH = Integer.MAX_VALUE;
+
+	private static final int METHOD_COUNT = HttpMethod.values().length;
+
+	private static final int[] NO_ENTRIES = new int[0];
+
+	private static final int MIN_AUTOMATON_STATES = 1024;
+
+	/**
+	 * The routes and the read-only trie used by lookups, compiled again by the writer when the routes change. Guarded by this, except for the lookups.
+	 */
+	private final RouteTable<CompiledTrie> table = new RouteTable<>(TrieRouteMatcher::compile);
+
 	@Override
 	public RouteMatch findTargetForRequestedRoute(HttpMethod httpMethod,
 			String path, String acceptType) {
-		List<RouteEntry> routeEntries = findRoutes(root, StringUtils.trim(path, '/').split("/"), 0, httpMethod);
-		RouteEntry entry = findTargetWithGivenAcceptType(routeEntries, acceptType);
-        return entry != null ? new RouteMatch(httpMethod, entry.target, entry.path, path, acceptType) : null;
+		CompiledTrie trie = table.get();
+		StaticRouteIndex.StaticPath staticPath = trie.staticRoutes.get(path);
+		if (staticPath != null) {
+			return staticPath.findTarget(httpMethod, acceptType);
+		}
+		RouteEntry entry;
+		if (acceptType == null) {
+			int first = trie.firstMatch(httpMethod, path);
+			entry = first != NO_MATCH ? trie.entries[first] : null;
+		} else {
+			int best = trie.bestMatch(httpMethod, path, acceptType);
+			entry = best != NO_MATCH && trie.entries[best].acceptedMimeType.isAcceptable(acceptType)
+					? trie.entries[best] : null;
+		}
+		return entry != null ? new RouteMatch(httpMethod, entry, new PathSegments(path), acceptType) : null;
 	}
 
 	@Override
 	public List<RouteMatch> findTargetsForRequestedRoute(HttpMethod httpMethod,
 			String path, String acceptType) {
+		CompiledTrie trie = table.get();
+		StaticRouteIndex.StaticPath staticPath = trie.staticRoutes.get(path);
+		if (staticPath != null) {
+			return staticPath.findTargets(httpMethod, acceptType);
+		}
+		List<RouteEntry> routeEntries = trie.matches(httpMethod, path);
+		if (routeEntries.isEmpty()) {
+			return Collections.emptyList();
+		}
+
 		List<RouteMatch> matchSet = new ArrayList<>();
-		List<RouteEntry> routeEntries = new ArrayList<>();
-        findFilters(root, StringUtils.trim(path, '/').split("/"), 0, httpMethod, routeEntries);
+		PathSegments segments = new PathSegments(path);
+		for (RouteEntry routeEntry : routeEntries) {
+			addIfAcceptable(matchSet, routeEntry, segments, acceptType);
+		}
+		return matchSet;
+	}
+
+	@Override
+	public RoutePlan findPlanForRequestedRoute(HttpMethod httpMethod, String path, String acceptType) {
+		CompiledTrie trie = table.get();
+		StaticRouteIndex.StaticPath staticPath = trie.staticRoutes.get(path);
+		if (staticPath != null) {
+			return staticPath.findPlan(httpMethod, acceptType);
+		}
+		int methods = bit(HttpMethod.before) | bit(HttpMethod.after) | bit(httpMethod);
+		if (httpMethod == HttpMethod.head) {
+			methods |= bit(HttpMethod.get);
+		}
+		long[] matched = trie.collect(methods, path);
 
-        for (RouteEntry routeEntry : routeEntries) {
-            if (acceptType != null) {
-                String bestMatch = MimeParse.bestMatch(Arrays.asList(routeEntry.acceptedType), acceptType);
+		List<RouteMatch> beforeFilters = new ArrayList<>();
+		List<RouteMatch> afterFilters = new ArrayList<>();
+		// the bitset is in registration order, so the first matching route and GET route are the best so far
+		int route = NO_MATCH;
+		int get = NO_MATCH;
+		PathSegments segments = null;
+		if (matched != null) {
+			// the matches share the segments, they are split only when something matched
+			segments = new PathSegments(path);
+			for (int word = 0; word < matched.length; word++) {
+				long bits = matched[word];
+				while (bits != 0) {
+					int index = (word << 6) + Long.numberOfTrailingZeros(bits);
+					RouteEntry entry = trie.entries[index];
+					bits &= bits - 1;
+					if (entry.httpMethod == HttpMethod.before) {
+						addIfAcceptable(beforeFilters, entry, segments, acceptType);
+					} else if (entry.httpMethod == HttpMethod.after) {
+						addIfAcceptable(afterFilters, entry, segments, acceptType);
+					} else if (entry.httpMethod == httpMethod) {
+						route = better(trie.entries, index, route, acceptType);
+					} else {
+						get = better(trie.entries, index, get, acceptType);
+					}
+				}
+			}
+		}
 
-                if (routeWithGivenAcceptType(bestMatch)) {
-                    matchSet.add(new RouteMatch(httpMethod, routeEntry.target, routeEntry.path, path, acceptType));
-                }
-            } else {
-                matchSet.add(new RouteMatch(httpMethod, routeEntry.target, routeEntry.path, path, acceptType));
-            }
-        }
+		RouteEntry entry = acceptable(trie.entries, route, acceptType);
+		boolean getFallback = entry == null && acceptable(trie.entries, get, acceptType) != null;
+		return new RoutePlan(beforeFilters,
+				entry != null ? new RouteMatch(httpMethod, entry, segments, acceptType) : null,
+				getFallback, afterFilters);
+	}
 
-        return matchSet;
+	private static void addIfAcceptable(List<RouteMatch> matchSet, RouteEntry routeEntry, PathSegments segments,
+			String acceptType) {
+		if (acceptType == null || routeEntry.acceptedMimeType.isAcceptable(acceptType)) {
+			matchSet.add(new RouteMatch(routeEntry.httpMethod, routeEntry, segments, acceptType));
+		}
 	}
 
 	@Override
-	public void clearRoutes() {
-		this.root = new Node();
+	public synchronized void clearRoutes() {
+		table.clear();
+		if (!isBatching()) {
+			publishRoutes();
+		}
 	}
-	
-	//-------------- Trie stuff!
-	
-	public TrieRouteMatcher() {
-		this.root = new Node();
+
+	synchronized void addRoute(HttpMethod method, String route, String acceptType, Object target) {
+		table.add(new RouteEntry(method, route, acceptType, target));
+		if (!isBatching()) {
+			publishRoutes();
+		}
 	}
-	
-	private Node root;
 
-	class Node {
-		Map<HttpMethod, List<RouteEntry>> filters;
-		Map<HttpMethod, List<RouteEntry>> routes;
-		Map<String, Node> children;
+	@Override
+	void publishRoutes() {
+		table.publish(isFrozen());
+	}
 
-		public Node() {
-			filters = new HashMap<>();
-			routes = new HashMap<>();
-			children = new HashMap<>();
+	/**
+	 * Compiles the current routes into a {@link RouteAutomaton}. Routes added later are compiled into one as well
+	 * when they are published, a running batch publishes them when it ends.
+	 */
+	@Override
+	void compileRoutes() {
+		if (!isBatching()) {
+			table.publish(true);
 		}
 	}
 
-	synchronized void addRoute(HttpMethod method, String route, String acceptType, Object target) {
-		RouteEntry entry = new RouteEntry();
-        entry.httpMethod = method;
-        entry.path = route;
-        entry.target = target;
-        entry.acceptedType = acceptType;
-        if ((method == HttpMethod.before || method == HttpMethod.after)
-                && route.equals(SparkUtils.ALL_PATHS)) {
-        	addRoute(root, new String[]{}, 0, entry);
-        } else {
-		addRoute(root, StringUtils.trim(route, '/').split("/"), 0, entry);
-        }
-	}
-
-	private void addRoute(Node node, String[] route, int pos, RouteEntry entry) {
-		if (pos == route.length) {
-			if (entry.target instanceof RouteImpl) {
-				List<RouteEntry> list = node.routes.get(entry.httpMethod);
-				if (list == null) {
-					list = new ArrayList<>();
-				}
-				list.add(entry);
-				node.routes.put(entry.httpMethod, list);
-			} else if (entry.target instanceof FilterImpl) {
-				List<RouteEntry> list = node.filters.get(entry.httpMethod);
-				if (list == null) {
-					list = new ArrayList<>();
+	@Override
+	synchronized int snapshots() {
+		return table.snapshots();
+	}
+
+	/**
+	 * @return true if lookups match the current routes with a {@link RouteAutomaton}
+	 */
+	boolean isCompiled() {
+		return table.get().automaton != null;
+	}
+
+	//-------------- Compiling the trie
+
+	private static CompiledTrie compile(RouteEntry[] entries, boolean frozen) {
+		CompiledTrie trie = compile(entries);
+		if (!frozen) {
+			return trie;
+		}
+		int maxStates = Math.max(MIN_AUTOMATON_STATES, 4 * entries.length);
+		RouteAutomaton automaton = RouteAutomaton.compile(trie, maxStates);
+		if (automaton == null) {
+			LOG.warn("The routes are too many to be compiled, they are matched by walking the trie");
+			return trie;
+		}
+		return new CompiledTrie(trie.entries, trie.allPaths, trie.root, trie.staticRoutes, automaton);
+	}
+
+	private static CompiledTrie compile(RouteEntry[] entries) {
+		List<Integer> allPaths = new ArrayList<>();
+		Builder root = new Builder();
+
+		for (int index = 0; index < entries.length; index++) {
+			RouteEntry route = entries[index];
+			if ((route.httpMethod == HttpMethod.before || route.httpMethod == HttpMethod.after)
+					&& route.path.equals(SparkUtils.ALL_PATHS)) {
+				allPaths.add(index);
+				continue;
+			}
+			Builder node = root;
+			for (int part = 0; part < route.parts.length; part++) {
+				node = node.child(route.parts[part], route.kinds[part]);
+			}
+			if (route.path.endsWith("*")) {
+				node.prefixEntries.add(index);
+			} else if (route.path.endsWith("/")) {
+				node.slashEntries.add(index);
+			} else {
+				node.exactEntries.add(index);
+			}
+		}
+		return new CompiledTrie(entries, byMethod(allPaths, entries), root.build(entries),
+				new StaticRouteIndex(entries), null);
+	}
+
+	/**
+	 * Splits entry indices by the http method of the entries, keeping them in registration order.
+	 */
+	private static int[][] byMethod(List<Integer> indices, RouteEntry[] entries) {
+		int[][] byMethod = new int[METHOD_COUNT][];
+		int[] counts = new int[METHOD_COUNT];
+		for (int index : indices) {
+			counts[entries[index].httpMethod.ordinal()]++;
+		}
+		for (int method = 0; method < METHOD_COUNT; method++) {
+			byMethod[method] = counts[method] > 0 ? new int[counts[method]] : NO_ENTRIES;
+			counts[method] = 0;
+		}
+		for (int index : indices) {
+			int method = entries[index].httpMethod.ordinal();
+			byMethod[method][counts[method]++] = index;
+		}
+		return byMethod;
+	}
+
+	/**
+	 * Mutable trie node, only used while compiling.
+	 */
+	private static class Builder {
+		Map<String, Builder> literals = new TreeMap<>();
+		Builder wildcard;
+		List<Integer> prefixEntries = new ArrayList<>();
+		List<Integer> exactEntries = new ArrayList<>();
+		List<Integer> slashEntries = new ArrayList<>();
+
+		Builder child(String part, byte kind) {
+			if (kind != RouteEntry.LITERAL) {
+				if (wildcard == null) {
+					wildcard = new Builder();
 				}
-				list.add(entry);
-				node.filters.put(entry.httpMethod, list);
+				return wildcard;
+			}
+			Builder child = literals.get(part);
+			if (child == null) {
+				child = new Builder();
+				literals.put(part, child);
 			}
-			return;
+			return child;
 		}
 
-		String word = route[pos];
-		if (word.startsWith(":")) {
-			word = "*";
+		CompiledNode build(RouteEntry[] entries) {
+			String[] keys = new String[literals.size()];
+			CompiledNode[] children = new CompiledNode[literals.size()];
+			int i = 0;
+			for (Map.Entry<String, Builder> literal : literals.entrySet()) {
+				keys[i] = literal.getKey();
+				children[i] = literal.getValue().build(entries);
+				i++;
+			}
+			return new CompiledNode(keys, children, wildcard != null ? wildcard.build(entries) : null,
+					byMethod(prefixEntries, entries), byMethod(exactEntries, entries),
+					byMethod(slashEntries, entries));
 		}
-		if (!node.children.containsKey(word)) {
-			node.children.put(word, new Node());
+	}
+
+	//-------------- Matching
+
+	/**
+	 * The routes of all http methods. Entries are referred to by their index, which is their registration order.
+	 */
+	static final class CompiledTrie {
+		final RouteEntry[] entries;
+		final int[][] allPaths;
+		final CompiledNode root;
+
+		/**
+		 * The results for the paths of the literal routes, consulted before the trie is walked.
+		 */
+		final StaticRouteIndex staticRoutes;
+
+		/**
+		 * The trie compiled into an automaton, used instead of walking the trie when present.
+		 */
+		final RouteAutomaton automaton;
+
+		CompiledTrie(RouteEntry[] entries, int[][] allPaths, CompiledNode root, StaticRouteIndex staticRoutes,
+				RouteAutomaton automaton) {
+			this.entries = entries;
+			this.allPaths = allPaths;
+			this.root = root;
+			this.staticRoutes = staticRoutes;
+			this.automaton = automaton;
+		}
+
+		/**
+		 * @return the index of the first registered route of method matching path, or NO_MATCH
+		 */
+		int firstMatch(HttpMethod method, String path) {
+			if (automaton != null) {
+				return automaton.firstMatch(method, path);
+			}
+			int best = first(allPaths[method.ordinal()]);
+			return root.firstMatch(method.ordinal(), path, 0, path.endsWith("/"), best);
+		}
+
+		/**
+		 * @return the index of the route of method matching path that best matches acceptType, or NO_MATCH
+		 */
+		int bestMatch(HttpMethod method, String path, String acceptType) {
+			if (automaton != null) {
+				return automaton.bestMatch(method, path, entries, acceptType);
+			}
+			int best = better(entries, allPaths[method.ordinal()], NO_MATCH, acceptType);
+			return root.bestMatch(method.ordinal(), path, 0, path.endsWith("/"), best, entries, acceptType);
+		}
+
+		/**
+		 * @return all routes of method matching path, in registration order
+		 */
+		List<RouteEntry> matches(HttpMethod method, String path) {
+			long[] matched = collect(bit(method), path);
+			if (matched == null) {
+				return Collections.emptyList();
+			}
+			List<RouteEntry> result = new ArrayList<>();
+			for (int word = 0; word < matched.length; word++) {
+				long bits = matched[word];
+				while (bits != 0) {
+					result.add(entries[(word << 6) + Long.numberOfTrailingZeros(bits)]);
+					bits &= bits - 1;
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * @param methods bit mask of the http methods to match
+		 * @return the indices of the matching routes as a bitset, or null if none matches
+		 */
+		long[] collect(int methods, String path) {
+			if (automaton != null) {
+				return automaton.collect(methods, path);
+			}
+			long[] matched = null;
+			for (int bits = methods; bits != 0; bits &= bits - 1) {
+				matched = mark(allPaths[Integer.numberOfTrailingZeros(bits)], matched, entries.length);
+			}
+			return root.collect(methods, path, 0, path.endsWith("/"), matched, entries.length);
 		}
-		addRoute(node.children.get(word), route, pos + 1, entry);
 	}
-	
-	private List<RouteEntry> findRoutes(Node node, String[] route, int pos, HttpMethod method) {
-		if (node == null) {
-			return new ArrayList<>();
+
+	/**
+	 * Node of a compiled trie. Literal children are kept in a sorted array so that a request segment can be looked
+	 * up in place, without creating a substring. Params and splats share the wildcard child since both match any
+	 * single segment. The entries ending at a node are indexed by http method (ordinal) and split by how
+	 * RouteEntry treats the end of the path:
+	 * <ul>
+	 * <li>prefixEntries - the route ends with '*' and also matches longer paths</li>
+	 * <li>exactEntries - the path must end here, without trailing slash</li>
+	 * <li>slashEntries - the path must end here, with a trailing slash</li>
+	 * </ul>
+	 */
+	static final class CompiledNode {
+		final String[] literals;
+		final CompiledNode[] literalChildren;
+		final CompiledNode wildcard;
+		final int[][] prefixEntries;
+		final int[][] exactEntries;
+		final int[][] slashEntries;
+
+		/**
+		 * Lowest entry index of each http method in this sub trie, used to prune branches that cannot improve
+		 * a first match.
+		 */
+		final int[] minEntry;
+
+		/**
+		 * Bit mask of the http methods having routes in this sub trie, used to skip branches when collecting.
+		 */
+		final int methods;
+
+		CompiledNode(String[] literals, CompiledNode[] literalChildren, CompiledNode wildcard,
+				int[][] prefixEntries, int[][] exactEntries, int[][] slashEntries) {
+			this.literals = literals;
+			this.literalChildren = literalChildren;
+			this.wildcard = wildcard;
+			this.prefixEntries = prefixEntries;
+			this.exactEntries = exactEntries;
+			this.slashEntries = slashEntries;
+
+			int[] min = new int[METHOD_COUNT];
+			int mask = 0;
+			for (int method = 0; method < METHOD_COUNT; method++) {
+				min[method] = Math.min(first(prefixEntries[method]),
+						Math.min(first(exactEntries[method]), first(slashEntries[method])));
+				for (CompiledNode child : literalChildren) {
+					min[method] = Math.min(min[method], child.minEntry[method]);
+				}
+				if (wildcard != null) {
+					min[method] = Math.min(min[method], wildcard.minEntry[method]);
+				}
+				if (min[method] != NO_MATCH) {
+					mask |= 1 << method;
+				}
+			}
+			this.minEntry = min;
+			this.methods = mask;
+		}
+
+		int firstMatch(int method, String path, int pos, boolean trailingSlash, int best) {
+			if (minEntry[method] >= best) {
+				return best;
+			}
+			best = Math.min(best, first(prefixEntries[method]));
+
+			int start = skipSlashes(path, pos);
+			if (start == path.length()) {
+				best = Math.min(best, first(trailingSlash ? slashEntries[method] : exactEntries[method]));
+				if (trailingSlash && wildcard != null) {
+					// a trailing slash lets a wildcard at the end of the route match an empty segment
+					best = Math.min(best, first(wildcard.prefixEntries[method]));
+				}
+				return best;
+			}
+
+			int end = segmentEnd(path, start);
+			CompiledNode literal = literal(path, start, end);
+			if (literal != null) {
+				best = literal.firstMatch(method, path, end, trailingSlash, best);
+			}
+			if (wildcard != null) {
+				best = wildcard.firstMatch(method, path, end, trailingSlash, best);
+			}
+			return best;
+		}
+
+		int bestMatch(int method, String path, int pos, boolean trailingSlash, int best, RouteEntry[] entries,
+				String acceptType) {
+			if ((methods & (1 << method)) == 0) {
+				return best;
+			}
+			best = better(entries, prefixEntries[method], best, acceptType);
+
+			int start = skipSlashes(path, pos);
+			if (start == path.length()) {
+				best = better(entries, trailingSlash ? slashEntries[method] : exactEntries[method], best, acceptType);
+				if (trailingSlash && wildcard != null) {
+					// a trailing slash lets a wildcard at the end of the route match an empty segment
+					best = better(entries, wildcard.prefixEntries[method], best, acceptType);
+				}
+				return best;
+			}
+
+			int end = segmentEnd(path, start);
+			CompiledNode literal = literal(path, start, end);
+			if (literal != null) {
+				best = literal.bestMatch(method, path, end, trailingSlash, best, entries, acceptType);
+			}
+			if (wildcard != null) {
+				best = wildcard.bestMatch(method, path, end, trailingSlash, best, entries, acceptType);
+			}
+			return best;
+		}
+
+		long[] collect(int methods, String path, int pos, boolean trailingSlash, long[] matched, int size) {
+			methods &= this.methods;
+			if (methods == 0) {
+				return matched;
+			}
+			int start = skipSlashes(path, pos);
+			boolean atEnd = start == path.length();
+
+			for (int bits = methods; bits != 0; bits &= bits - 1) {
+				int method = Integer.numberOfTrailingZeros(bits);
+				matched = mark(prefixEntries[method], matched, size);
+				if (atEnd) {
+					matched = mark(trailingSlash ? slashEntries[method] : exactEntries[method], matched, size);
+					if (trailingSlash && wildcard != null) {
+						// a trailing slash lets a wildcard at the end of the route match an empty segment
+						matched = mark(wildcard.prefixEntries[method], matched, size);
+					}
+				}
+			}
+			if (atEnd) {
+				return matched;
+			}
+
+			int end = segmentEnd(path, start);
+			CompiledNode literal = literal(path, start, end);
+			if (literal != null) {
+				matched = literal.collect(methods, path, end, trailingSlash, matched, size);
+			}
+			if (wildcard != null) {
+				matched = wildcard.collect(methods, path, end, trailingSlash, matched, size);
+			}
+			return matched;
 		}
-		if (route.length == pos) {
-			List<RouteEntry> entries = node.routes.get(method);
-			if (entries == null) {
-				entries = new ArrayList<>();
+
+		/**
+		 * @return the literal child matching the path segment [start, end) or null
+		 */
+		CompiledNode literal(String path, int start, int end) {
+			int low = 0;
+			int high = literals.length - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				int cmp = compare(literals[mid], path, start, end);
+				if (cmp < 0) {
+					low = mid + 1;
+				} else if (cmp > 0) {
+					high = mid - 1;
+				} else {
+					return literalChildren[mid];
+				}
 			}
-			return entries;
+			return null;
+		}
+	}
+
+	/**
+	 * Picks the better of two routes for an Accept header the way {@link #findTargetWithGivenAcceptType} does,
+	 * without collecting the candidates: the one matching the header best, the one added first if they match
+	 * equally well.
+	 *
+	 * @param index the index of a matching route
+	 * @param best  the index of the best route so far or NO_MATCH
+	 * @param acceptType the Accept header, null to pick the route added first
+	 * @return the index of the better route
+	 */
+	static int better(RouteEntry[] entries, int index, int best, String acceptType) {
+		if (best == NO_MATCH) {
+			return index;
 		}
-		
-		String word = route[pos];
-		if (!node.children.containsKey(word)) {
-			word = "*";
+		if (acceptType == null) {
+			return Math.min(index, best);
 		}
-		return findRoutes(node.children.get(word), route, pos+1, method);
+		int cmp = entries[index].acceptedMimeType.compareMatch(entries[best].acceptedMimeType, acceptType);
+		return cmp > 0 || (cmp == 0 && index < best) ? index : best;
 	}
-	
-	private void findFilters(Node node, String[] route, int pos, HttpMethod method, List<RouteEntry> filters) {
-		if (node == null) {
-			return;
+
+	/**
+	 * @return the index of the best route for acceptType among best and indices
+	 */
+	static int better(RouteEntry[] entries, int[] indices, int best, String acceptType) {
+		for (int index : indices) {
+			best = better(entries, index, best, acceptType);
 		}
-		List<RouteEntry> entries = node.filters.get(method);
-		if (entries != null) {
-			filters.addAll(entries);
+		return best;
+	}
+
+	/**
+	 * @return the route at index if it accepts acceptType, null if it does not or index is NO_MATCH
+	 */
+	static RouteEntry acceptable(RouteEntry[] entries, int index, String acceptType) {
+		if (index == NO_MATCH) {
+			return null;
 		}
-		if (route.length == pos) {
-			return;
+		RouteEntry entry = entries[index];
+		return acceptType == null || entry.acceptedMimeType.isAcceptable(acceptType) ? entry : null;
+	}
+
+	private static int bit(HttpMethod method) {
+		return 1 << method.ordinal();
+	}
+
+	private static int first(int[] entries) {
+		return entries.length > 0 ? entries[0] : NO_MATCH;
+	}
+
+	static long[] mark(int[] entries, long[] matched, int size) {
+		if (entries.length == 0) {
+			return matched;
 		}
-		
-		String word = route[pos];
-		if (!node.children.containsKey(word)) {
-			word = "*";
+		if (matched == null) {
+			matched = new long[(size + 63) >>> 6];
 		}
-		findFilters(node.children.get(word), route, pos+1, method, filters);
+		for (int index : entries) {
+			matched[index >>> 6] |= 1L << index;
+		}
+		return matched;
 	}
-	
+
+	// Segments are scanned in place, empty segments are skipped as SparkUtils.convertRouteToList does
+
+	static int skipSlashes(String path, int pos) {
+		while (pos < path.length() && path.charAt(pos) == '/') {
+			pos++;
+		}
+		return pos;
+	}
+
+	static int segmentEnd(String path, int start) {
+		int end = path.indexOf('/', start);
+		return end < 0 ? path.length() : end;
+	}
+
+	/**
+	 * Compares a literal with the path region [start, end) the same way String.compareTo does.
+	 */
+	private static int compare(String literal, String path, int start, int end) {
+		int length = end - start;
+		int limit = Math.min(literal.length(), length);
+		for (int i = 0; i < limit; i++) {
+			char c1 = literal.charAt(i);
+			char c2 = path.charAt(start + i);
+			if (c1 != c2) {
+				return c1 - c2;
+			}
+		}
+		return literal.length() - length;
+	}
+
 }
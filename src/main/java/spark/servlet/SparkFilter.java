@@ -28,11 +28,13 @@ import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import spark.Access;
+import spark.Compression;
 import spark.resource.AbstractFileResolvingResource;
 import spark.resource.AbstractResourceHandler;
 import spark.resource.ClassPathResource;
@@ -40,7 +42,7 @@ import spark.resource.ClassPathResourceHandler;
 import spark.resource.ExternalResource;
 import spark.resource.ExternalResourceHandler;
 import spark.route.RouteMatcherFactory;
-import spark.utils.IOUtils;
+import spark.webserver.BodyWriter;
 import spark.webserver.MatcherFilter;
 
 /**
@@ -55,6 +57,8 @@ public class SparkFilter implements Filter {
 
     public static final String APPLICATION_CLASS_PARAM = "applicationClass";
 
+    public static final String ASYNC_TIMEOUT_PARAM = "asyncTimeout";
+
     private static List<AbstractResourceHandler> staticResourceHandlers = null;
 
     private static boolean staticResourcesSet = false;
@@ -62,6 +66,7 @@ public class SparkFilter implements Filter {
 
     private String filterPath;
     private MatcherFilter matcherFilter;
+    private Compression compression;
 
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
@@ -72,6 +77,15 @@ public class SparkFilter implements Filter {
 
         filterPath = FilterTools.getFilterPath(filterConfig);
         matcherFilter = new MatcherFilter(RouteMatcherFactory.get(), true, false);
+
+        compression = Access.getCompression();
+        matcherFilter.setCompression(compression);
+        matcherFilter.setEtags(Access.isEtags());
+
+        String asyncTimeout = filterConfig.getInitParameter(ASYNC_TIMEOUT_PARAM);
+        if (asyncTimeout != null) {
+            matcherFilter.setAsyncTimeout(Long.parseLong(asyncTimeout.trim()));
+        }
     }
 
     /**
@@ -117,13 +131,21 @@ public class SparkFilter implements Filter {
             for (AbstractResourceHandler staticResourceHandler : staticResourceHandlers) {
                 AbstractFileResolvingResource resource = staticResourceHandler.getResource(httpRequest);
                 if (resource != null && resource.isReadable()) {
-                    IOUtils.copy(resource.getInputStream(), response.getWriter());
+                    HttpServletResponse httpResponse = (HttpServletResponse) response;
+                    String filename = resource.getFilename();
+                    String contentType = filename != null ? request.getServletContext().getMimeType(filename) : null;
+                    if (contentType != null) {
+                        httpResponse.setContentType(contentType);
+                    }
+                    BodyWriter.write(resource.getInputStream(), httpRequest, httpResponse, compression);
                     return;
                 }
             }
         }
 
-        matcherFilter.doFilter(requestWrapper, response, chain);
+        if (matcherFilter.handle(requestWrapper, (HttpServletResponse) response) == MatcherFilter.Outcome.unconsumed) {
+            chain.doFilter(requestWrapper, response);
+        }
     }
 
     /**
@@ -182,7 +204,9 @@ public class SparkFilter implements Filter {
 
     @Override
     public void destroy() {
-        // ignore
+        if (matcherFilter != null) {
+            matcherFilter.destroy();
+        }
     }
 
 }
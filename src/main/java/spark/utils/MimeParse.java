@@ -1,10 +1,7 @@
 package spark.utils;
 
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
 
 /**
@@ -17,6 +14,16 @@ public class MimeParse {
      */
     public static final String NO_MIME_TYPE = "";
 
+    /**
+     * Max number of distinct Accept headers (and mime types) remembered. Clients send few distinct values, when
+     * there are more (e.g. a scanner sending random values) the least recently used ones are evicted, so the values
+     * of regular clients stay cached.
+     */
+    private static final int MAX_CACHED_VALUES = 256;
+
+    private static final LruCache<String, ParseResults[]> PARSED_HEADERS = new LruCache<>(MAX_CACHED_VALUES);
+    private static final LruCache<String, MimeType> MIME_TYPES = new LruCache<>(MAX_CACHED_VALUES);
+
     /**
      * Parse results container
      */
@@ -28,6 +35,9 @@ public class MimeParse {
         // !a dictionary of all the parameters for the media range
         Map<String, String> params;
 
+        // the 'q' parameter as a float, set by parseMediaRange
+        float quality;
+
         @Override
         public String toString() {
             StringBuffer s = new StringBuffer("('" + type + "', '" + subType + "', {");
@@ -38,6 +48,77 @@ public class MimeParse {
         }
     }
 
+    /**
+     * A supported mime type, e.g. the accept type of a route, parsed once. Remembers how well it matches the
+     * Accept headers it has been negotiated against.
+     */
+    public static final class MimeType {
+        private final String mimeType;
+        private final ParseResults parsed;
+        private final LruCache<String, FitnessAndQuality> matches = new LruCache<>(MAX_CACHED_VALUES);
+
+        private MimeType(String mimeType) {
+            this.mimeType = mimeType;
+            this.parsed = parseMediaRange(mimeType);
+        }
+
+        /**
+         * @return the mime type
+         */
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        /**
+         * @param header the Accept header
+         * @return true if this mime type is accepted by header
+         */
+        public boolean isAcceptable(String header) {
+            return Float.compare(match(header).quality, 0) != 0;
+        }
+
+        /**
+         * Compares how well this and another mime type match an Accept header.
+         *
+         * @param other  the other mime type
+         * @param header the Accept header
+         * @return a positive number if this is the better match, negative if other is, zero if equal
+         */
+        public int compareMatch(MimeType other, String header) {
+            return match(header).compareTo(other.match(header));
+        }
+
+        private FitnessAndQuality match(String header) {
+            FitnessAndQuality match = matches.get(header);
+            if (match == null) {
+                match = fitnessAndQualityParsed(parsed, parseHeader(header));
+                matches.put(header, match);
+            }
+            return match;
+        }
+
+        @Override
+        public String toString() {
+            return mimeType;
+        }
+    }
+
+    /**
+     * Returns the parsed form of a supported mime type. Instances are shared, so the results of negotiating
+     * them are shared by every route accepting the same type.
+     *
+     * @param mimeType the mime type, e.g. 'application/json'
+     * @return the parsed mime type
+     */
+    public static MimeType mimeType(String mimeType) {
+        MimeType parsed = MIME_TYPES.get(mimeType);
+        if (parsed == null) {
+            parsed = new MimeType(mimeType);
+            MIME_TYPES.put(mimeType, parsed);
+        }
+        return parsed;
+    }
+
     /**
      * Carves up a mime-type and returns a ParseResults object
      * For example, the media range 'application/xhtml;q=0.5' would get parsed
@@ -86,18 +167,33 @@ public class MimeParse {
         if (isBlank(q) || f < 0 || f > 1) {
             results.params.put("q", "1");
         }
+        results.quality = toFloat(results.params.get("q"), 0);
         return results;
     }
 
+    /**
+     * Parses the media ranges of an Accept header, reusing the result for headers seen before.
+     */
+    private static ParseResults[] parseHeader(String header) {
+        ParseResults[] parseResults = PARSED_HEADERS.get(header);
+        if (parseResults == null) {
+            String[] ranges = header.split(",");
+            parseResults = new ParseResults[ranges.length];
+            for (int i = 0; i < ranges.length; i++) {
+                parseResults[i] = parseMediaRange(ranges[i]);
+            }
+            PARSED_HEADERS.put(header, parseResults);
+        }
+        return parseResults;
+    }
+
     /**
      * Structure for holding a fitness/quality combo
      */
     private static class FitnessAndQuality implements Comparable<FitnessAndQuality> {
-        int fitness;
-
-        float quality;
+        final int fitness;
 
-        String mimeType; // optionally used
+        final float quality;
 
         private FitnessAndQuality(int fitness, float quality) {
             this.fitness = fitness;
@@ -124,13 +220,12 @@ public class MimeParse {
      * the best match, or (-1, 0) if no match was found. Just as for
      * quality_parsed(), 'parsed_ranges' must be a list of parsed media ranges.
      *
-     * @param mimeType
+     * @param target
      * @param parsedRanges
      */
-    private static FitnessAndQuality fitnessAndQualityParsed(String mimeType, Collection<ParseResults> parsedRanges) {
+    private static FitnessAndQuality fitnessAndQualityParsed(ParseResults target, ParseResults[] parsedRanges) {
         int bestFitness = -1;
         float bestFitQ = 0;
-        ParseResults target = parseMediaRange(mimeType);
 
         for (ParseResults range : parsedRanges) {
             if ((target.type.equals(range.type) || range.type.equals("*") || target.type.equals("*"))
@@ -147,7 +242,7 @@ public class MimeParse {
                     fitness += paramMatches;
                     if (fitness > bestFitness) {
                         bestFitness = fitness;
-                        bestFitQ = toFloat(range.params.get("q"), 0);
+                        bestFitQ = range.quality;
                     }
                 }
             }
@@ -163,21 +258,17 @@ public class MimeParse {
      * @return the best match
      */
     public static String bestMatch(Collection<String> supported, String header) {
-        List<ParseResults> parseResults = new LinkedList<ParseResults>();
-        List<FitnessAndQuality> weightedMatches = new LinkedList<FitnessAndQuality>();
-        for (String r : header.split(",")) {
-            parseResults.add(parseMediaRange(r));
-        }
-
+        String bestMatch = null;
+        FitnessAndQuality best = null;
         for (String s : supported) {
-            FitnessAndQuality fitnessAndQuality = fitnessAndQualityParsed(s, parseResults);
-            fitnessAndQuality.mimeType = s;
-            weightedMatches.add(fitnessAndQuality);
+            FitnessAndQuality fitnessAndQuality = mimeType(s).match(header);
+            // on equal fitness and quality the last supported type wins
+            if (best == null || fitnessAndQuality.compareTo(best) >= 0) {
+                best = fitnessAndQuality;
+                bestMatch = s;
+            }
         }
-        Collections.sort(weightedMatches);
-
-        FitnessAndQuality lastOne = weightedMatches.get(weightedMatches.size() - 1);
-        return Float.compare(lastOne.quality, 0) != 0 ? lastOne.mimeType : NO_MIME_TYPE;
+        return best != null && Float.compare(best.quality, 0) != 0 ? bestMatch : NO_MIME_TYPE;
     }
 
     private static boolean isBlank(String s) {
@@ -0,0 +1,355 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.webserver;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.io.ArrayByteBufferPool;
+import org.eclipse.jetty.io.ByteBufferPool;
+
+import spark.Compression;
+import spark.StreamingOutput;
+import spark.utils.IOUtils;
+
+/**
+ * Writes the body of a response to the servlet output stream. Strings are encoded as utf-8 into pooled buffers,
+ * the other body types are copied to the stream as they are, with a fixed size buffer, so the memory used does not
+ * depend on the size of the body. Bodies are compressed with gzip or deflate when the compression rules allow it and
+ * the client accepts it.
+ */
+public final class BodyWriter {
+
+    private static final String HTML_CONTENT_TYPE = "text/html; charset=utf-8";
+    private static final String BINARY_CONTENT_TYPE = "application/octet-stream";
+
+    private static final String GZIP = "gzip";
+    private static final String DEFLATE = "deflate";
+
+    private static final int BUFFER_SIZE = 4096;
+
+    /**
+     * Size of the pooled buffers strings are encoded into, bodies up to this size are written at once.
+     */
+    private static final int ENCODE_BUFFER_SIZE = 8192;
+
+    private static final ByteBufferPool BUFFERS = new ArrayByteBufferPool();
+
+    /**
+     * Idle encoders, pooled rather than thread local as requests may run on short lived virtual threads. At most
+     * as many as there are processors are kept, the others are left to the garbage collector.
+     */
+    private static final Queue<CharsetEncoder> ENCODERS =
+            new ArrayBlockingQueue<>(Runtime.getRuntime().availableProcessors());
+
+    private BodyWriter() {
+    }
+
+    /**
+     * Writes body to the response, setting the content type if the route did not. A body that is Closeable, e.g.
+     * an InputStream, is closed once written or when writing it fails.
+     *
+     * @param body         a String, byte[], ByteBuffer, InputStream, File, Path or StreamingOutput
+     * @param httpRequest  the request, for the encodings the client accepts
+     * @param httpResponse the response
+     * @param compression  the compression rules, null for no compression
+     * @throws IOException if the body cannot be read or the response cannot be written
+     */
+    public static void write(Object body,
+                             HttpServletRequest httpRequest,
+                             HttpServletResponse httpResponse,
+                             Compression compression) throws IOException {
+        try (Closeable closeable = body instanceof Closeable ? (Closeable) body : null) {
+            writeBody(body, httpRequest, httpResponse, compression);
+        }
+    }
+
+    private static void writeBody(Object body,
+                                  HttpServletRequest httpRequest,
+                                  HttpServletResponse httpResponse,
+                                  Compression compression) throws IOException {
+        if (httpResponse.getContentType() == null) {
+            httpResponse.setContentType(body instanceof String ? HTML_CONTENT_TYPE : BINARY_CONTENT_TYPE);
+        }
+        long length = length(body);
+        String encoding = contentEncoding(httpRequest, httpResponse, compression, length);
+        if (encoding == null) {
+            if (length > Integer.MAX_VALUE) {
+                httpResponse.setHeader("Content-Length", Long.toString(length));
+            } else if (length >= 0) {
+                httpResponse.setContentLength((int) length);
+            }
+            write(body, httpResponse.getOutputStream());
+            return;
+        }
+
+        httpResponse.setHeader("Content-Encoding", encoding);
+        boolean gzip = encoding.equals(GZIP);
+        int level = compression.getLevel();
+        Deflater deflater = DeflaterPool.acquire(level, gzip);
+        try {
+            DeflaterOutputStream out = gzip
+                    ? new GzipOutputStream(httpResponse.getOutputStream(), deflater)
+                    : new DeflaterOutputStream(httpResponse.getOutputStream(), deflater, BUFFER_SIZE);
+            write(body, out);
+            // not closed, that would end the pooled deflater
+            out.finish();
+        } finally {
+            DeflaterPool.release(deflater, level, gzip);
+        }
+    }
+
+    private static void write(Object body, OutputStream out) throws IOException {
+        if (body instanceof String) {
+            write((String) body, out);
+        } else if (body instanceof byte[]) {
+            out.write((byte[]) body);
+        } else if (body instanceof ByteBuffer) {
+            write((ByteBuffer) body, out);
+        } else if (body instanceof InputStream) {
+            IOUtils.copyLarge((InputStream) body, out);
+        } else if (body instanceof File) {
+            Files.copy(((File) body).toPath(), out);
+        } else if (body instanceof Path) {
+            Files.copy((Path) body, out);
+        } else if (body instanceof StreamingOutput) {
+            ((StreamingOutput) body).write(out);
+        } else {
+            throw new IllegalArgumentException("Unsupported body type " + body.getClass().getName());
+        }
+    }
+
+    /**
+     * @return the size in bytes of body or -1 if it is not known before writing it
+     */
+    private static long length(Object body) throws IOException {
+        if (body instanceof String) {
+            return utf8Length((String) body);
+        } else if (body instanceof byte[]) {
+            return ((byte[]) body).length;
+        } else if (body instanceof ByteBuffer) {
+            return ((ByteBuffer) body).remaining();
+        } else if (body instanceof File) {
+            return Files.size(((File) body).toPath());
+        } else if (body instanceof Path) {
+            return Files.size((Path) body);
+        }
+        return -1;
+    }
+
+    /**
+     * @return the encoding to compress the body with or null to send it as it is
+     */
+    private static String contentEncoding(HttpServletRequest httpRequest,
+                                          HttpServletResponse httpResponse,
+                                          Compression compression,
+                                          long length) {
+        if (compression == null || !compression.isEnabled() || httpRequest == null
+                || length == 0 || (length > 0 && length < compression.getMinSize())
+                || !compression.isCompressible(httpResponse.getContentType())) {
+            return null;
+        }
+        int status = httpResponse.getStatus();
+        if (status < HttpServletResponse.SC_OK
+                || status == HttpServletResponse.SC_NO_CONTENT
+                || status == HttpServletResponse.SC_NOT_MODIFIED
+                || httpResponse.containsHeader("Content-Encoding")) {
+            return null;
+        }
+        // the response depends on the header, whether it is compressed or not
+        httpResponse.addHeader("Vary", "Accept-Encoding");
+        return acceptedEncoding(httpRequest.getHeader("Accept-Encoding"));
+    }
+
+    /**
+     * @param acceptEncoding the Accept-Encoding header of the request
+     * @return gzip or deflate, gzip if both are accepted, or null if the client accepts neither
+     */
+    static String acceptedEncoding(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        boolean deflate = false;
+        for (String token : acceptEncoding.split(",")) {
+            String[] parts = token.split(";");
+            String coding = parts[0].trim();
+            if (isRejected(parts)) {
+                continue;
+            }
+            if (coding.equalsIgnoreCase(GZIP) || coding.equals("*")) {
+                return GZIP;
+            }
+            if (coding.equalsIgnoreCase(DEFLATE)) {
+                deflate = true;
+            }
+        }
+        return deflate ? DEFLATE : null;
+    }
+
+    /**
+     * @return true if the parameters of a coding contain q=0
+     */
+    private static boolean isRejected(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2).trim()) <= 0;
+                } catch (NumberFormatException e) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void write(String body, OutputStream out) throws IOException {
+        if (body.isEmpty()) {
+            return;
+        }
+        CharsetEncoder encoder = acquireEncoder();
+        CharBuffer chars = CharBuffer.wrap(body);
+        ByteBuffer buffer = BUFFERS.acquire(ENCODE_BUFFER_SIZE, false);
+        try {
+            buffer.clear();
+            CoderResult result;
+            do {
+                result = encoder.encode(chars, buffer, true);
+                if (result.isOverflow()) {
+                    drain(buffer, out);
+                }
+            } while (result.isOverflow());
+            while (encoder.flush(buffer).isOverflow()) {
+                drain(buffer, out);
+            }
+            drain(buffer, out);
+        } finally {
+            BUFFERS.release(buffer);
+            ENCODERS.offer(encoder);
+        }
+    }
+
+    private static CharsetEncoder acquireEncoder() {
+        CharsetEncoder encoder = ENCODERS.poll();
+        if (encoder == null) {
+            return StandardCharsets.UTF_8.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+        return encoder.reset();
+    }
+
+    private static void drain(ByteBuffer buffer, OutputStream out) throws IOException {
+        buffer.flip();
+        if (buffer.hasRemaining()) {
+            out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        buffer.clear();
+    }
+
+    /**
+     * @return the number of bytes of the utf-8 encoding of s, with unpaired surrogates replaced by '?' like the
+     * encoder does
+     */
+    static int utf8Length(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static void write(ByteBuffer buffer, OutputStream out) throws IOException {
+        // the buffer of the route is left untouched
+        ByteBuffer source = buffer.duplicate();
+        if (source.hasArray()) {
+            out.write(source.array(), source.arrayOffset() + source.position(), source.remaining());
+            return;
+        }
+        byte[] chunk = new byte[Math.min(BUFFER_SIZE, source.remaining())];
+        while (source.hasRemaining()) {
+            int length = Math.min(chunk.length, source.remaining());
+            source.get(chunk, 0, length);
+            out.write(chunk, 0, length);
+        }
+    }
+
+    /**
+     * gzip stream compressing with a given (pooled) Deflater, unlike GZIPOutputStream which creates its own.
+     */
+    private static final class GzipOutputStream extends DeflaterOutputStream {
+
+        private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+        private final CRC32 crc = new CRC32();
+
+        private GzipOutputStream(OutputStream out, Deflater deflater) throws IOException {
+            super(out, deflater, BUFFER_SIZE);
+            out.write(HEADER);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            super.write(b, off, len);
+            crc.update(b, off, len);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            super.finish();
+            int crcValue = (int) crc.getValue();
+            int size = (int) def.getBytesRead();
+            out.write(new byte[] {
+                    (byte) crcValue, (byte) (crcValue >> 8), (byte) (crcValue >> 16), (byte) (crcValue >> 24),
+                    (byte) size, (byte) (size >> 8), (byte) (size >> 16), (byte) (size >> 24)
+            });
+        }
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.webserver;
+
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.Deflater;
+
+/**
+ * Pool of Deflaters by compression level and format. A Deflater holds native memory that is only freed by end()
+ * or finalization, so they are reset and reused rather than created for every response. Each pool keeps at most
+ * as many idle Deflaters as there are processors, the ones released beyond that are ended, so a burst of
+ * compressed responses does not keep its native memory for good.
+ */
+final class DeflaterPool {
+
+    static final int CAPACITY = Runtime.getRuntime().availableProcessors();
+
+    // by level (-1 to 9) and nowrap (raw deflate for gzip, zlib wrapped for deflate)
+    @SuppressWarnings("unchecked")
+    private static final Queue<Deflater>[] POOLS = new Queue[(Deflater.BEST_COMPRESSION + 2) * 2];
+
+    static {
+        for (int i = 0; i < POOLS.length; i++) {
+            POOLS[i] = new ArrayBlockingQueue<>(CAPACITY);
+        }
+    }
+
+    private DeflaterPool() {
+    }
+
+    /**
+     * @param level  the compression level
+     * @param nowrap true for the raw deflate format used in gzip streams
+     * @return an idle or new Deflater, to be given back with release
+     */
+    static Deflater acquire(int level, boolean nowrap) {
+        Deflater deflater = POOLS[index(level, nowrap)].poll();
+        return deflater != null ? deflater : new Deflater(level, nowrap);
+    }
+
+    static void release(Deflater deflater, int level, boolean nowrap) {
+        deflater.reset();
+        if (!POOLS[index(level, nowrap)].offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @return the number of idle Deflaters of a level and format
+     */
+    static int idle(int level, boolean nowrap) {
+        return POOLS[index(level, nowrap)].size();
+    }
+
+    private static int index(int level, boolean nowrap) {
+        return (level + 1) * 2 + (nowrap ? 1 : 0);
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.webserver;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Weak entity tags computed from response bodies and the If-None-Match comparison. The tags are weak as the same
+ * body can be sent compressed or not. Bodies are hashed with a 64 bit non-cryptographic hash in the style of
+ * xxHash64, strings by their chars, so they do not have to be encoded first.
+ */
+final class ETags {
+
+    private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME_3 = 0x165667B19E3779F9L;
+    private static final long PRIME_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME_5 = 0x27D4EB2F165667C5L;
+
+    private ETags() {
+    }
+
+    /**
+     * @param body a response body
+     * @return the weak tag of body or null if body is a stream or file, which cannot be hashed before writing it
+     */
+    static String weakTag(Object body) {
+        if (body instanceof String) {
+            return weakTag(hash((String) body));
+        } else if (body instanceof byte[]) {
+            return weakTag(hash(ByteBuffer.wrap((byte[]) body)));
+        } else if (body instanceof ByteBuffer) {
+            return weakTag(hash(((ByteBuffer) body).duplicate()));
+        }
+        return null;
+    }
+
+    /**
+     * @return the weak tag of a version, e.g. a hash or a counter
+     */
+    static String weakTag(long version) {
+        return "W/\"" + Long.toHexString(version) + '"';
+    }
+
+    /**
+     * Compares tag with the tags of an If-None-Match header, ignoring whether they are weak.
+     *
+     * @param ifNoneMatch the If-None-Match header of the request
+     * @param tag         the tag of the current representation
+     * @return true if the header lists tag or is *
+     */
+    static boolean matches(String ifNoneMatch, String tag) {
+        if (ifNoneMatch == null || tag == null) {
+            return false;
+        }
+        String opaqueTag = opaque(tag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String trimmed = candidate.trim();
+            if (trimmed.equals("*") || opaque(trimmed).equals(opaqueTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String opaque(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    static long hash(String s) {
+        int length = s.length();
+        long hash = PRIME_5 + length * 2L;
+        int i = 0;
+        for (; i + 4 <= length; i += 4) {
+            long chars = s.charAt(i) | (long) s.charAt(i + 1) << 16
+                    | (long) s.charAt(i + 2) << 32 | (long) s.charAt(i + 3) << 48;
+            hash = mix(hash, chars);
+        }
+        for (; i < length; i++) {
+            hash ^= s.charAt(i) * PRIME_5;
+            hash = Long.rotateLeft(hash, 11) * PRIME_1;
+        }
+        return avalanche(hash);
+    }
+
+    static long hash(ByteBuffer bytes) {
+        ByteBuffer buffer = bytes.order(ByteOrder.LITTLE_ENDIAN);
+        long hash = PRIME_5 + buffer.remaining();
+        while (buffer.remaining() >= 8) {
+            hash = mix(hash, buffer.getLong());
+        }
+        while (buffer.hasRemaining()) {
+            hash ^= (buffer.get() & 0xff) * PRIME_5;
+            hash = Long.rotateLeft(hash, 11) * PRIME_1;
+        }
+        return avalanche(hash);
+    }
+
+    private static long mix(long hash, long value) {
+        long k = Long.rotateLeft(value * PRIME_2, 31) * PRIME_1;
+        return Long.rotateLeft(hash ^ k, 27) * PRIME_1 + PRIME_4;
+    }
+
+    private static long avalanche(long hash) {
+        long h = hash;
+        h ^= h >>> 33;
+        h *= PRIME_2;
+        h ^= h >>> 29;
+        h *= PRIME_3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+}
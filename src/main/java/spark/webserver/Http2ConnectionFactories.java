@@ -0,0 +1,91 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.webserver;
+
+import org.eclipse.jetty.alpn.server.ALPNServerConnectionFactory;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http2.HTTP2Cipher;
+import org.eclipse.jetty.http2.server.AbstractHTTP2ServerConnectionFactory;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory;
+import org.eclipse.jetty.server.ConnectionFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.SslConnectionFactory;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+
+/**
+ * Creates the connection factories of HTTP/2. http2-server and the ALPN modules are optional dependencies, so
+ * they are only referred to from here: this class is only loaded when HTTP/2 is enabled, after
+ * {@link SparkServer#checkHttp2Available()} made sure they are on the classpath.
+ */
+final class Http2ConnectionFactories {
+
+    private final int maxConcurrentStreams;
+    private final int initialStreamWindow;
+    private final int initialSessionWindow;
+
+    /**
+     * @param maxConcurrentStreams the maximum number of concurrent streams per connection or JETTY_DEFAULT
+     * @param initialStreamWindow  the initial flow control window in bytes of a stream or JETTY_DEFAULT
+     * @param initialSessionWindow the initial flow control window in bytes of a connection or JETTY_DEFAULT
+     */
+    Http2ConnectionFactories(int maxConcurrentStreams, int initialStreamWindow, int initialSessionWindow) {
+        this.maxConcurrentStreams = maxConcurrentStreams;
+        this.initialStreamWindow = initialStreamWindow;
+        this.initialSessionWindow = initialSessionWindow;
+    }
+
+    /**
+     * @return the factories of a secure connector negotiating h2 with ALPN, falling back to HTTP/1.1
+     */
+    ConnectionFactory[] secure(SslContextFactory sslContextFactory, HttpConfiguration configuration) {
+        // h2 only allows the strongest cipher suites, they have to be preferred
+        sslContextFactory.setCipherComparator(HTTP2Cipher.COMPARATOR);
+        sslContextFactory.setUseCipherSuitesOrder(true);
+
+        ALPNServerConnectionFactory alpn = new ALPNServerConnectionFactory("h2", HttpVersion.HTTP_1_1.asString());
+        alpn.setDefaultProtocol(HttpVersion.HTTP_1_1.asString());
+        return new ConnectionFactory[] {
+                new SslConnectionFactory(sslContextFactory, alpn.getProtocol()),
+                alpn,
+                configure(new HTTP2ServerConnectionFactory(configuration)),
+                new HttpConnectionFactory(configuration)
+        };
+    }
+
+    /**
+     * @return the factory accepting cleartext h2c, by prior knowledge or by upgrading an HTTP/1.1 request
+     */
+    ConnectionFactory cleartext(HttpConfiguration configuration) {
+        return configure(new HTTP2CServerConnectionFactory(configuration));
+    }
+
+    private ConnectionFactory configure(AbstractHTTP2ServerConnectionFactory factory) {
+        if (maxConcurrentStreams != SparkServer.JETTY_DEFAULT) {
+            factory.setMaxConcurrentStreams(maxConcurrentStreams);
+        }
+        if (initialStreamWindow != SparkServer.JETTY_DEFAULT) {
+            factory.setInitialStreamRecvWindow(initialStreamWindow);
+        }
+        if (initialSessionWindow != SparkServer.JETTY_DEFAULT) {
+            factory.setInitialSessionRecvWindow(initialSessionWindow);
+        }
+        return factory;
+    }
+
+}
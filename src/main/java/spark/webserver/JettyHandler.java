@@ -18,7 +18,6 @@ package spark.webserver;
 
 import java.io.IOException;
 
-import javax.servlet.Filter;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -37,9 +36,9 @@ class JettyHandler extends SessionHandler {
 
     private static final Logger LOG = Log.getLogger(JettyHandler.class);
 
-    private Filter filter;
+    private MatcherFilter filter;
 
-    public JettyHandler(Filter filter) {
+    public JettyHandler(MatcherFilter filter) {
         this.filter = filter;
     }
 
@@ -50,13 +49,14 @@ class JettyHandler extends SessionHandler {
             HttpServletRequest request,
             HttpServletResponse response) throws IOException, ServletException {
         LOG.debug("jettyhandler, handle();");
-        try {
-            filter.doFilter(request, response, null);
-            baseRequest.setHandled(true);
-        } catch (NotConsumedException ignore) {
-            // TODO : Not use an exception in order to be faster.
-            baseRequest.setHandled(false);
-        }
+        MatcherFilter.Outcome outcome = filter.handle(request, response);
+        baseRequest.setHandled(outcome != MatcherFilter.Outcome.unconsumed);
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        filter.destroy();
+        super.doStop();
     }
 
 }
\ No newline at end of file
@@ -16,9 +16,22 @@
  */
 package spark.webserver;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.List;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
@@ -29,17 +42,20 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import spark.Access;
+import spark.Compression;
 import spark.FilterImpl;
 import spark.HaltException;
 import spark.Request;
 import spark.RequestResponseFactory;
 import spark.Response;
 import spark.RouteImpl;
+import spark.Validator;
 import spark.exception.ExceptionHandlerImpl;
 import spark.exception.ExceptionMapper;
 import spark.route.HttpMethod;
 import spark.route.RouteMatch;
 import spark.route.RouteMatcher;
+import spark.route.RoutePlan;
 
 /**
  * Filter for matching of filters and routes.
@@ -49,10 +65,28 @@ import spark.route.RouteMatcher;
 public class MatcherFilter implements Filter {
 
     private static final String ACCEPT_TYPE_REQUEST_MIME_HEADER = "Accept";
+    private static final String ETAG_HEADER = "ETag";
+    private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+    private static final String LAST_MODIFIED_HEADER = "Last-Modified";
+    private static final String IF_MODIFIED_SINCE_HEADER = "If-Modified-Since";
+
+    /**
+     * The default time in milliseconds the CompletionStage returned by a route has to complete
+     */
+    public static final long DEFAULT_ASYNC_TIMEOUT = 30000;
 
     private RouteMatcher routeMatcher;
     private boolean isServletContext;
     private boolean hasOtherHandlers;
+    private long asyncTimeout = DEFAULT_ASYNC_TIMEOUT;
+    private Compression compression;
+    private boolean etags;
+
+    /**
+     * Times out the CompletionStages returned by routes, the container only runs the timed out exchanges. Created
+     * for the first route returning one and shut down when the filter is destroyed.
+     */
+    private volatile ScheduledThreadPoolExecutor timeouts;
 
     /**
      * The logger.
@@ -72,6 +106,36 @@ public class MatcherFilter implements Filter {
         this.hasOtherHandlers = hasOtherHandlers;
     }
 
+    /**
+     * Sets the time the CompletionStage returned by a route has to complete. When it runs out the request is
+     * answered with 503 Service Unavailable.
+     *
+     * @param asyncTimeout the timeout in milliseconds, 0 for no timeout
+     */
+    public void setAsyncTimeout(long asyncTimeout) {
+        this.asyncTimeout = asyncTimeout;
+    }
+
+    /**
+     * Sets the compression rules of the responses, a route or filter can replace them for its response.
+     *
+     * @param compression the compression rules, null for no compression
+     */
+    public void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Sets whether the responses of GET requests answered with 200 get a weak ETag computed from their body, a
+     * route or filter can change it for its response. Requests whose If-None-Match lists the tag are answered with
+     * 304 Not Modified.
+     *
+     * @param etags true for automatic ETags
+     */
+    public void setEtags(boolean etags) {
+        this.etags = etags;
+    }
+
     public void init(FilterConfig filterConfig) {
         //
     }
@@ -81,159 +145,502 @@ public class MatcherFilter implements Filter {
         HttpServletRequest httpRequest = (HttpServletRequest) servletRequest; // NOSONAR
         HttpServletResponse httpResponse = (HttpServletResponse) servletResponse;
 
+        if (handle(httpRequest, httpResponse) == Outcome.unconsumed) {
+            if (hasOtherHandlers) {
+                throw new NotConsumedException();
+            }
+            if (chain != null) {
+                chain.doFilter(httpRequest, httpResponse);
+            }
+        }
+    }
+
+    /**
+     * Runs the filters and the route matching the request and writes the response. Unlike doFilter it tells
+     * whether the request was consumed instead of throwing NotConsumedException or calling the filter chain.
+     * A route returning a CompletionStage is resumed when the stage completes: the request is put into asynchronous
+     * mode and the after filters run and the response is written by the thread completing the stage.
+     *
+     * @param httpRequest  the request
+     * @param httpResponse the response
+     * @return the outcome, unconsumed if nothing consumed the request and other handlers should process it
+     * @throws IOException if the response cannot be written
+     */
+    public Outcome handle(HttpServletRequest httpRequest, HttpServletResponse httpResponse) throws IOException {
         String httpMethodStr = httpRequest.getMethod().toLowerCase(); // NOSONAR
         String uri = httpRequest.getRequestURI(); // NOSONAR
         String acceptType = httpRequest.getHeader(ACCEPT_TYPE_REQUEST_MIME_HEADER);
 
-        String bodyContent = null;
-
-        RequestWrapper req = new RequestWrapper();
-        ResponseWrapper res = new ResponseWrapper();
+        // one request and one response serve all filters and the route of the exchange
+        Exchange exchange = new Exchange(httpRequest, httpResponse, uri);
 
         LOG.debug("httpMethod:" + httpMethodStr + ", uri: " + uri);
         try {
-            // BEFORE filters
-            List<RouteMatch> matchSet = routeMatcher.findTargetsForRequestedRoute(HttpMethod.before, uri, acceptType);
-
-            for (RouteMatch filterMatch : matchSet) {
-                Object filterTarget = filterMatch.getTarget();
-                if (filterTarget instanceof FilterImpl) {
-                    Request request = RequestResponseFactory.create(filterMatch, httpRequest);
-                    Response response = RequestResponseFactory.create(httpResponse);
-
-                    FilterImpl filter = (FilterImpl) filterTarget;
-
-                    req.setDelegate(request);
-                    res.setDelegate(response);
-
-                    filter.handle(req, res);
-
-                    String bodyAfterFilter = Access.getBody(response);
-                    if (bodyAfterFilter != null) {
-                        bodyContent = bodyAfterFilter;
-                    }
-                }
+            HttpMethod httpMethod = httpMethod(httpMethodStr);
+            if (httpMethod == null) {
+                methodNotAllowed(exchange, acceptType);
+                return finish(exchange, false);
             }
-            // BEFORE filters, END
+            RoutePlan plan = routeMatcher.findPlanForRequestedRoute(httpMethod, uri, acceptType);
 
-            HttpMethod httpMethod = HttpMethod.valueOf(httpMethodStr);
+            // BEFORE filters
+            runFilters(plan.getBeforeFilters(), exchange);
+            // BEFORE filters, END
 
-            RouteMatch match = null;
-            match = routeMatcher.findTargetForRequestedRoute(httpMethod, uri, acceptType);
+            RouteMatch match = plan.getRoute();
 
             Object target = null;
             if (match != null) {
                 target = match.getTarget();
-            } else if (httpMethod == HttpMethod.head && bodyContent == null) {
-                // See if get is mapped to provide default head mapping
-                bodyContent =
-                        routeMatcher.findTargetForRequestedRoute(HttpMethod.get, uri, acceptType) != null ? "" : null;
+            } else if (plan.hasGetFallback() && exchange.bodyContent == null) {
+                // get is mapped and provides the default head mapping
+                exchange.bodyContent = "";
             }
 
-            if (target != null) {
-                try {
-                    String result = null;
-                    if (target instanceof RouteImpl) {
-                        RouteImpl route = ((RouteImpl) target);
-                        Request request = RequestResponseFactory.create(match, httpRequest);
-                        Response response = RequestResponseFactory.create(httpResponse);
-
-                        req.setDelegate(request);
-                        res.setDelegate(response);
+            if (target instanceof RouteImpl) {
+                RouteImpl route = ((RouteImpl) target);
+                exchange.bind(match);
 
-                        Object element = route.handle(req, res);
+                if (route.getValidator() != null && isNotModified(route.getValidator(), exchange)) {
+                    // the client has the current representation, the route is not invoked
+                    httpResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                    exchange.body("");
+                } else {
+                    Object element = route.handle(exchange.req, exchange.res);
 
-                        result = route.render(element);
-                        // result = element.toString(); // TODO: Remove later when render fixed
+                    if (element instanceof CompletionStage) {
+                        return suspend((CompletionStage<?>) element, route, plan, exchange);
                     }
+                    Object result = route.body(element);
                     if (result != null) {
-                        bodyContent = result;
+                        exchange.body(result);
                     }
-                } catch (HaltException hEx) { // NOSONAR
-                    throw hEx; // NOSONAR
                 }
             }
 
             // AFTER filters
-            matchSet = routeMatcher.findTargetsForRequestedRoute(HttpMethod.after, uri, acceptType);
-
-            for (RouteMatch filterMatch : matchSet) {
-                Object filterTarget = filterMatch.getTarget();
-                if (filterTarget instanceof FilterImpl) {
-                    Request request = RequestResponseFactory.create(filterMatch, httpRequest);
-                    Response response = RequestResponseFactory.create(httpResponse);
+            runFilters(plan.getAfterFilters(), exchange);
+            // AFTER filters, END
 
-                    req.setDelegate(request);
-                    res.setDelegate(response);
+        } catch (Exception e) {
+            fail(e, exchange);
+        }
+        return finish(exchange, false);
+    }
 
-                    FilterImpl filter = (FilterImpl) filterTarget;
-                    filter.handle(req, res);
+    /**
+     * @return the method of the request or null if no route can be mapped to it
+     */
+    private static HttpMethod httpMethod(String httpMethodStr) {
+        try {
+            return HttpMethod.valueOf(httpMethodStr);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
 
-                    String bodyAfterFilter = Access.getBody(response);
-                    if (bodyAfterFilter != null) {
-                        bodyContent = bodyAfterFilter;
-                    }
-                }
+    /**
+     * Answers a request with a method no route can be mapped to with 405 Method Not Allowed, unless a filter sets
+     * the body. The filters run as for any other request, e.g. to authenticate or log it.
+     */
+    private void methodNotAllowed(Exchange exchange, String acceptType) {
+        try {
+            runFilters(routeMatcher.findTargetsForRequestedRoute(HttpMethod.before, exchange.uri, acceptType),
+                       exchange);
+            if (exchange.bodyContent == null) {
+                exchange.httpResponse.setStatus(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+                exchange.body(METHOD_NOT_ALLOWED);
             }
-            // AFTER filters, END
+            runFilters(routeMatcher.findTargetsForRequestedRoute(HttpMethod.after, exchange.uri, acceptType),
+                       exchange);
+        } catch (Exception e) {
+            fail(e, exchange);
+        }
+    }
 
-        } catch (HaltException hEx) {
-            LOG.debug("halt performed");
-            httpResponse.setStatus(hEx.getStatusCode());
-            if (hEx.getBody() != null) {
-                bodyContent = hEx.getBody();
-            } else {
-                bodyContent = "";
+    /**
+     * Sets the validators of a conditional route on the response and evaluates the conditional headers of the
+     * request against them, If-None-Match taking precedence over If-Modified-Since.
+     *
+     * @return true if the client has the current representation
+     */
+    private static boolean isNotModified(Validator validator, Exchange exchange) throws Exception {
+        String ifNoneMatch = exchange.httpRequest.getHeader(IF_NONE_MATCH_HEADER);
+        boolean notModified = false;
+        if (validator.getVersion() != null) {
+            String tag = ETags.weakTag(validator.getVersion().get(exchange.req));
+            exchange.httpResponse.setHeader(ETAG_HEADER, tag);
+            notModified = ETags.matches(ifNoneMatch, tag);
+        }
+        if (validator.getLastModified() != null) {
+            long lastModified = validator.getLastModified().get(exchange.req);
+            exchange.httpResponse.setDateHeader(LAST_MODIFIED_HEADER, lastModified);
+            if (ifNoneMatch == null) {
+                long ifModifiedSince = ifModifiedSince(exchange.httpRequest);
+                // http dates have a precision of a second
+                notModified = ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
             }
-        } catch (Exception e) {
-            ExceptionHandlerImpl handler = ExceptionMapper.getInstance().getHandler(e);
-            if (handler != null) {
-                handler.handle(e, req, res);
-                String bodyAfterFilter = Access.getBody(res.getDelegate());
+        }
+        return notModified;
+    }
+
+    /**
+     * @return the If-Modified-Since date of the request or -1 if it has none or an invalid one
+     */
+    private static long ifModifiedSince(HttpServletRequest httpRequest) {
+        try {
+            return httpRequest.getDateHeader(IF_MODIFIED_SINCE_HEADER);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Runs the filters of matches, the body they set replaces the current body.
+     */
+    private static void runFilters(List<RouteMatch> matches, Exchange exchange) throws Exception {
+        for (RouteMatch filterMatch : matches) {
+            Object filterTarget = filterMatch.getTarget();
+            if (filterTarget instanceof FilterImpl) {
+                exchange.bind(filterMatch);
+
+                FilterImpl filter = (FilterImpl) filterTarget;
+                filter.handle(exchange.req, exchange.res);
+
+                String bodyAfterFilter = Access.getBody(exchange.response);
                 if (bodyAfterFilter != null) {
-                    bodyContent = bodyAfterFilter;
+                    exchange.body(bodyAfterFilter);
                 }
-            } else {
-                LOG.error("", e);
-                httpResponse.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-                bodyContent = INTERNAL_ERROR;
             }
         }
+    }
 
-        // If redirected and content is null set to empty string to not throw NotConsumedException
-        if (bodyContent == null && res.isRedirected()) {
+    /**
+     * Turns an exception thrown by a filter, a route or the stage returned by a route into the response.
+     */
+    private static void fail(Exception e, Exchange exchange) {
+        if (e instanceof HaltException) {
+            HaltException hEx = (HaltException) e;
+            LOG.debug("halt performed");
+            exchange.halted = true;
+            exchange.httpResponse.setStatus(hEx.getStatusCode());
+            exchange.body(hEx.getBody() != null ? hEx.getBody() : "");
+            return;
+        }
+        ExceptionHandlerImpl handler = ExceptionMapper.getInstance().getHandler(e);
+        if (handler != null) {
+            handler.handle(e, exchange.req, exchange.res);
+            String bodyAfterFilter = Access.getBody(exchange.res.getDelegate());
+            if (bodyAfterFilter != null) {
+                exchange.body(bodyAfterFilter);
+            }
+        } else {
+            LOG.error("", e);
+            exchange.httpResponse.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            exchange.body(INTERNAL_ERROR);
+        }
+    }
+
+    /**
+     * Writes the response of the exchange.
+     *
+     * @param mustConsume true if the request has to be consumed, even if other handlers could process it
+     */
+    private Outcome finish(Exchange exchange, boolean mustConsume) throws IOException {
+        HttpServletResponse httpResponse = exchange.httpResponse;
+        Object bodyContent = exchange.bodyContent;
+
+        // If redirected and content is null set to empty string to consume the request
+        if (bodyContent == null && exchange.res.isRedirected()) {
             bodyContent = "";
         }
 
         boolean consumed = bodyContent != null;
 
-        if (!consumed && hasOtherHandlers) {
-            throw new NotConsumedException();
+        if (!consumed && hasOtherHandlers && !mustConsume) {
+            return Outcome.unconsumed;
         }
 
-        if (!consumed && !isServletContext) {
+        if (!consumed && (!isServletContext || mustConsume)) {
             httpResponse.setStatus(HttpServletResponse.SC_NOT_FOUND);
-            bodyContent = String.format(NOT_FOUND, uri);
+            bodyContent = String.format(NOT_FOUND, exchange.uri);
             consumed = true;
         }
 
         if (consumed) {
             // Write body content
-            if (!httpResponse.isCommitted()) {
-                if (httpResponse.getContentType() == null) {
-                    httpResponse.setContentType("text/html; charset=utf-8");
+            if (!httpResponse.isCommitted()
+                    && httpResponse.getStatus() != HttpServletResponse.SC_NOT_MODIFIED) {
+                String tag = etag(exchange, bodyContent);
+                if (tag != null) {
+                    httpResponse.setHeader(ETAG_HEADER, tag);
+                    if (ETags.matches(exchange.httpRequest.getHeader(IF_NONE_MATCH_HEADER), tag)) {
+                        // the client has the body already
+                        httpResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                        close(bodyContent);
+                        return exchange.halted ? Outcome.halted : Outcome.consumed;
+                    }
                 }
-                httpResponse.getOutputStream().write(bodyContent.getBytes("utf-8"));
+                Compression rules = exchange.response.compression();
+                BodyWriter.write(bodyContent, exchange.httpRequest, httpResponse,
+                                 rules != null ? rules : compression);
+            } else {
+                // the response has no body
+                close(bodyContent);
             }
-        } else if (chain != null) {
-            chain.doFilter(httpRequest, httpResponse);
+            return exchange.halted ? Outcome.halted : Outcome.consumed;
         }
+        return Outcome.unconsumed;
     }
 
-    public void destroy() {
-        // TODO Auto-generated method stub
+    /**
+     * @return the automatic ETag of the response or null if it does not get one
+     */
+    private String etag(Exchange exchange, Object bodyContent) {
+        Boolean enabled = exchange.response.etags();
+        if (!(enabled != null ? enabled : etags)
+                || !exchange.httpRequest.getMethod().equals("GET")
+                || exchange.httpResponse.getStatus() != HttpServletResponse.SC_OK
+                || exchange.httpResponse.containsHeader(ETAG_HEADER)) {
+            return null;
+        }
+        return ETags.weakTag(bodyContent);
+    }
+
+    /**
+     * Finishes the exchange when stage completes. The container thread is released by putting the request into
+     * asynchronous mode, unless the container does not support it for this request, then the thread waits for
+     * the stage. Either way the stage gets at most the timeout of the response or else asyncTimeout milliseconds.
+     */
+    private Outcome suspend(CompletionStage<?> stage, RouteImpl route, RoutePlan plan, Exchange exchange)
+            throws IOException {
+        Long responseTimeout = exchange.response.asyncTimeout();
+        long timeout = responseTimeout != null ? responseTimeout : asyncTimeout;
+        if (!exchange.httpRequest.isAsyncSupported()) {
+            CompletableFuture<?> future = stage.toCompletableFuture();
+            try {
+                Object value = timeout > 0 ? future.get(timeout, TimeUnit.MILLISECONDS) : future.get();
+                resume(value, null, route, plan, exchange);
+            } catch (ExecutionException e) {
+                resume(null, e.getCause(), route, plan, exchange);
+            } catch (TimeoutException e) {
+                timeOut(exchange);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                timeOut(exchange);
+            }
+            return finish(exchange, false);
+        }
+
+        AsyncContext asyncContext = exchange.httpRequest.startAsync(exchange.httpRequest, exchange.httpResponse);
+        // timed out here rather than by the container, which could not tell a stage completing at the same time
+        // from one that did not and would answer the request with an error while the response is written
+        asyncContext.setTimeout(0);
+        // whoever claims it first, the stage or the timeout, finishes the exchange, the other does nothing
+        AtomicBoolean finished = new AtomicBoolean();
+        asyncContext.addListener(new AsyncListener() {
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                //
+            }
+
+            @Override
+            public void onComplete(AsyncEvent event) {
+                //
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                finished.set(true);
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+                //
+            }
+        });
+        ScheduledFuture<?> timer = timeout <= 0 ? null : timeouts().schedule(() -> {
+            if (finished.compareAndSet(false, true)) {
+                asyncContext.start(() -> {
+                    timeOut(exchange);
+                    complete(exchange, asyncContext);
+                });
+            }
+        }, timeout, TimeUnit.MILLISECONDS);
+        stage.whenComplete((value, error) -> {
+            if (finished.compareAndSet(false, true)) {
+                if (timer != null) {
+                    timer.cancel(false);
+                }
+                resume(value, error, route, plan, exchange);
+                complete(exchange, asyncContext);
+            } else {
+                // timed out, the value is not written
+                close(value);
+            }
+        });
+        return Outcome.consumed;
+    }
+
+    /**
+     * Continues the exchange with the value or the error the stage returned by the route completed with.
+     */
+    private static void resume(Object value, Throwable error, RouteImpl route, RoutePlan plan, Exchange exchange) {
+        try {
+            if (error instanceof CompletionException && error.getCause() != null) {
+                error = error.getCause();
+            }
+            if (error instanceof Exception) {
+                throw (Exception) error;
+            } else if (error != null) {
+                throw new ExecutionException(error);
+            }
+            Object result = route.body(value);
+            if (result != null) {
+                exchange.body(result);
+            }
+
+            // AFTER filters
+            runFilters(plan.getAfterFilters(), exchange);
+            // AFTER filters, END
+
+        } catch (Exception e) {
+            fail(e, exchange);
+        }
+    }
+
+    private static void timeOut(Exchange exchange) {
+        LOG.warn("Route timed out: " + exchange.uri);
+        exchange.httpResponse.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        exchange.body(TIMEOUT);
+    }
+
+    private void complete(Exchange exchange, AsyncContext asyncContext) {
+        try {
+            finish(exchange, true);
+        } catch (IOException e) {
+            LOG.debug("Could not write the response", e);
+        } catch (RuntimeException e) {
+            LOG.error("", e);
+        } finally {
+            asyncContext.complete();
+        }
+    }
+
+    /**
+     * Closes a body that is not written, e.g. an InputStream replaced by the body of a filter.
+     */
+    private static void close(Object body) {
+        if (body instanceof Closeable) {
+            try {
+                ((Closeable) body).close();
+            } catch (IOException e) {
+                LOG.debug("Could not close the body", e);
+            }
+        }
+    }
+
+    private ScheduledThreadPoolExecutor timeouts() {
+        ScheduledThreadPoolExecutor current = timeouts;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (timeouts == null) {
+                ScheduledThreadPoolExecutor created = new ScheduledThreadPoolExecutor(1, runnable -> {
+                    Thread thread = new Thread(runnable, "spark-async-timeout");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                // most stages complete in time, their timeouts are dropped rather than kept until they would expire
+                created.setRemoveOnCancelPolicy(true);
+                timeouts = created;
+            }
+            return timeouts;
+        }
+    }
+
+    /**
+     * Stops the thread timing out the CompletionStages returned by routes, the stages still running are no longer
+     * timed out.
+     */
+    public synchronized void destroy() {
+        if (timeouts != null) {
+            timeouts.shutdownNow();
+            timeouts = null;
+        }
+    }
+
+    /**
+     * What became of a request handled by the filter.
+     */
+    public enum Outcome {
+        /**
+         * A filter or route produced the response (or the not found page was written)
+         */
+        consumed,
+        /**
+         * Nothing matched, other handlers or the filter chain should process the request
+         */
+        unconsumed,
+        /**
+         * A filter or route called halt
+         */
+        halted
     }
 
     private static final String NOT_FOUND = "<html><body><h2>404 Not found</h2>The requested route [%s] has not been mapped in Spark</body></html>";
+    /**
+     * The state of one request, shared by the filters and the route.
+     */
+    private static final class Exchange {
+
+        private final HttpServletRequest httpRequest;
+        private final HttpServletResponse httpResponse;
+        private final String uri;
+
+        private final RequestWrapper req = new RequestWrapper();
+        private final ResponseWrapper res = new ResponseWrapper();
+        private final Response response;
+
+        // a String or one of the body types of RouteImpl.body
+        private Object bodyContent;
+        private boolean halted;
+
+        private Exchange(HttpServletRequest httpRequest, HttpServletResponse httpResponse, String uri) {
+            this.httpRequest = httpRequest;
+            this.httpResponse = httpResponse;
+            this.uri = uri;
+            this.response = RequestResponseFactory.create(httpResponse);
+            res.setDelegate(response);
+        }
+
+        /**
+         * Replaces the body of the response, closing the one it replaces if that holds a resource.
+         */
+        private void body(Object body) {
+            if (bodyContent != body) {
+                close(bodyContent);
+            }
+            bodyContent = body;
+        }
+
+        /**
+         * Binds the request of the exchange to match, creating it for the first filter or route, and clears the
+         * body of the response so the body set by the next filter can be told apart.
+         */
+        private void bind(RouteMatch match) {
+            Request request = req.getDelegate();
+            if (request == null) {
+                req.setDelegate(RequestResponseFactory.create(match, httpRequest));
+            } else {
+                RequestResponseFactory.rebind(request, match);
+            }
+            response.body(null);
+        }
+    }
+
+    private static final String METHOD_NOT_ALLOWED = "<html><body><h2>405 Method Not Allowed</h2></body></html>";
     private static final String INTERNAL_ERROR = "<html><body><h2>500 Internal Error</h2></body></html>";
+    private static final String TIMEOUT = "<html><body><h2>503 Service Unavailable</h2>The route did not complete in time</body></html>";
 }
@@ -23,4 +23,9 @@ package spark.webserver;
  */
 public class NotConsumedException extends RuntimeException {
     private static final long serialVersionUID = 6748899505989134484L;
+
+    public NotConsumedException() {
+        // no stack trace, the exception only signals that the request was not consumed
+        super(null, null, false, false);
+    }
 }
@@ -18,6 +18,7 @@ package spark.webserver;
 
 import javax.servlet.http.HttpServletResponse;
 
+import spark.Compression;
 import spark.Response;
 
 class ResponseWrapper extends Response {
@@ -44,6 +45,36 @@ class ResponseWrapper extends Response {
         delegate.body(body);
     }
 
+    @Override
+    public void compression(Compression compression) {
+        delegate.compression(compression);
+    }
+
+    @Override
+    public Compression compression() {
+        return delegate.compression();
+    }
+
+    @Override
+    public void etags(boolean etags) {
+        delegate.etags(etags);
+    }
+
+    @Override
+    public Boolean etags() {
+        return delegate.etags();
+    }
+
+    @Override
+    public void asyncTimeout(long milliseconds) {
+        delegate.asyncTimeout(milliseconds);
+    }
+
+    @Override
+    public Long asyncTimeout() {
+        return delegate.asyncTimeout();
+    }
+
     @Override
     public boolean equals(Object obj) {
         return delegate.equals(obj);
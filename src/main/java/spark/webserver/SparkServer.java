@@ -21,16 +21,27 @@ import java.io.IOException;
 import java.net.ServerSocket;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
 
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.server.ConnectionFactory;
 import org.eclipse.jetty.server.Connector;
 import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.SslConnectionFactory;
 import org.eclipse.jetty.server.handler.HandlerList;
 import org.eclipse.jetty.server.handler.ResourceHandler;
+import org.eclipse.jetty.server.handler.gzip.GzipHandler;
 import org.eclipse.jetty.util.resource.Resource;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import spark.Compression;
 
 /**
  * Spark server implementation
@@ -39,16 +50,189 @@ import org.eclipse.jetty.util.ssl.SslContextFactory;
  */
 public class SparkServer {
 
+    private static final Logger LOG = LoggerFactory.getLogger(SparkServer.class);
+
     private static final int SPARK_DEFAULT_PORT = 4567;
     private static final String NAME = "Spark";
+
+    // classes of the optional dependencies, looked up by name so that this class loads without them
+    private static final String HTTP2_CLASS = "org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory";
+    private static final String ALPN_CLASS = "org.eclipse.jetty.alpn.server.ALPNServerConnectionFactory";
+    private static final String UNIX_SOCKET_CLASS = "org.eclipse.jetty.unixsocket.UnixSocketConnector";
+
+    /**
+     * Value of the tuning settings that leaves the setting to Jetty
+     */
+    public static final int JETTY_DEFAULT = -1;
+
+    /**
+     * The default time in milliseconds an idle connection is kept open
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = 30000;
+
     private Handler handler;
     private Server server;
+    private ThreadPoolImplementation threadPoolImplementation = ThreadPoolImplementation.platform;
+
+    private int minThreads = JETTY_DEFAULT;
+    private int maxThreads = JETTY_DEFAULT;
+    private int threadIdleTimeout = JETTY_DEFAULT;
+
+    private int acceptors = JETTY_DEFAULT;
+    private int selectors = JETTY_DEFAULT;
+    private int acceptQueueSize = JETTY_DEFAULT;
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+    private int requestHeaderSize = JETTY_DEFAULT;
+    private int responseHeaderSize = JETTY_DEFAULT;
+    private int outputBufferSize = JETTY_DEFAULT;
+
+    private String unixSocket;
+    private boolean tcpConnector = true;
+
+    // null unless HTTP/2 is enabled
+    private Http2ConnectionFactories http2;
+
+    private Compression compression;
+
+    /**
+     * The threads requests are handled on.
+     */
+    public enum ThreadPoolImplementation {
+        /**
+         * Jetty's queued pool of platform threads
+         */
+        platform,
+        /**
+         * A new virtual thread per task, needs JDK 21 or later, falls back to platform threads on older JVMs
+         */
+        virtual
+    }
 
     public SparkServer(Handler handler) {
         this.handler = handler;
         System.setProperty("org.mortbay.log.class", "spark.JettyLogger");
     }
 
+    /**
+     * Sets the threads requests are handled on, must be called before ignite.
+     *
+     * @param threadPoolImplementation the thread pool implementation
+     */
+    public void setThreadPoolImplementation(ThreadPoolImplementation threadPoolImplementation) {
+        this.threadPoolImplementation = threadPoolImplementation;
+    }
+
+    /**
+     * Sizes the pool of platform threads, must be called before ignite. Use JETTY_DEFAULT for the values to leave
+     * to Jetty.
+     *
+     * @param minThreads        the number of threads kept even when idle
+     * @param maxThreads        the maximum number of threads
+     * @param threadIdleTimeout the time in milliseconds a thread above minThreads is kept idle
+     */
+    public void setThreadPool(int minThreads, int maxThreads, int threadIdleTimeout) {
+        this.minThreads = minThreads;
+        this.maxThreads = maxThreads;
+        this.threadIdleTimeout = threadIdleTimeout;
+    }
+
+    /**
+     * Tunes the connector, must be called before ignite. Use JETTY_DEFAULT for the values to leave to Jetty.
+     *
+     * @param acceptors       the number of threads accepting connections
+     * @param selectors       the number of selectors watching the connections
+     * @param acceptQueueSize the size of the queue of connections waiting to be accepted
+     * @param idleTimeout     the time in milliseconds an idle connection is kept open
+     */
+    public void setConnector(int acceptors, int selectors, int acceptQueueSize, long idleTimeout) {
+        this.acceptors = acceptors;
+        this.selectors = selectors;
+        this.acceptQueueSize = acceptQueueSize;
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Sets the buffer sizes of the connections, must be called before ignite. Use JETTY_DEFAULT for the values to
+     * leave to Jetty.
+     *
+     * @param requestHeaderSize  the maximum size in bytes of the request headers
+     * @param responseHeaderSize the maximum size in bytes of the response headers
+     * @param outputBufferSize   the size in bytes of the response buffer, a body up to this size is sent at once
+     */
+    public void setBufferSizes(int requestHeaderSize, int responseHeaderSize, int outputBufferSize) {
+        this.requestHeaderSize = requestHeaderSize;
+        this.responseHeaderSize = responseHeaderSize;
+        this.outputBufferSize = outputBufferSize;
+    }
+
+    /**
+     * Listens on a Unix domain socket too, must be called before ignite. Connections on the socket are plain
+     * HTTP (and h2c with HTTP/2 enabled), for a proxy on the same host.
+     *
+     * @param unixSocket   the path of the socket file
+     * @param tcpConnector true to listen on the host and port as well, false for the socket only
+     */
+    public void setUnixSocket(String unixSocket, boolean tcpConnector) {
+        checkUnixSocketAvailable();
+        this.unixSocket = unixSocket;
+        this.tcpConnector = tcpConnector;
+    }
+
+    /**
+     * Enables HTTP/2 next to HTTP/1.1, must be called before ignite. The secure connector negotiates h2 with ALPN,
+     * the plain connector accepts h2c, by prior knowledge or by upgrading an HTTP/1.1 request. Use JETTY_DEFAULT
+     * for the values to leave to Jetty.
+     *
+     * @param maxConcurrentStreams the maximum number of concurrent streams (requests) per connection
+     * @param initialStreamWindow  the initial flow control window in bytes of a stream
+     * @param initialSessionWindow the initial flow control window in bytes of a connection
+     * @throws IllegalStateException if http2-server is not on the classpath
+     */
+    public void setHttp2(int maxConcurrentStreams, int initialStreamWindow, int initialSessionWindow) {
+        checkHttp2Available();
+        this.http2 = new Http2ConnectionFactories(maxConcurrentStreams, initialStreamWindow, initialSessionWindow);
+    }
+
+    /**
+     * Checks that the optional dependency HTTP/2 needs is on the classpath: org.eclipse.jetty.http2:http2-server.
+     * A secure server needs an ALPN module too, checked when it starts.
+     *
+     * @throws IllegalStateException if it is not
+     */
+    public static void checkHttp2Available() {
+        require(HTTP2_CLASS, "HTTP/2 needs org.eclipse.jetty.http2:http2-server on the classpath");
+    }
+
+    /**
+     * Checks that the optional dependency listening on a Unix domain socket needs is on the classpath:
+     * org.eclipse.jetty:jetty-unixsocket.
+     *
+     * @throws IllegalStateException if it is not
+     */
+    public static void checkUnixSocketAvailable() {
+        require(UNIX_SOCKET_CLASS, "Listening on a unix socket needs org.eclipse.jetty:jetty-unixsocket "
+                + "on the classpath");
+    }
+
+    private static void require(String className, String message) {
+        try {
+            Class.forName(className, false, SparkServer.class.getClassLoader());
+        } catch (ClassNotFoundException | LinkageError e) {
+            throw new IllegalStateException(message, e);
+        }
+    }
+
+    /**
+     * Sets the compression rules of the static files, must be called before ignite. The responses of the routes are
+     * compressed by the MatcherFilter.
+     *
+     * @param compression the compression rules, null for no compression
+     */
+    public void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
     /**
      * Ignites the spark server, listening on the specified port, running SSL secured with the specified keystore
      * and truststore.  If truststore is null, keystore is reused.
@@ -77,23 +261,30 @@ public class SparkServer {
             }
         }
 
-        ServerConnector connector;
-
-        if (keystoreFile == null) {
-            connector = createSocketConnector();
-        } else {
-            connector = createSecureSocketConnector(keystoreFile,
-                                                    keystorePassword, truststoreFile, truststorePassword);
-        }
+        server = new Server(createThreadPool());
+        List<Connector> connectors = new ArrayList<>();
 
-        // Set some timeout options to make debugging easier.
-        connector.setIdleTimeout(TimeUnit.HOURS.toMillis(1));
-        connector.setSoLingerTime(-1);
-        connector.setHost(host);
-        connector.setPort(port);
+        if (tcpConnector) {
+            ServerConnector connector;
+            if (keystoreFile == null) {
+                connector = createSocketConnector(server);
+            } else {
+                connector = createSecureSocketConnector(server, keystoreFile,
+                                                        keystorePassword, truststoreFile, truststorePassword);
+            }
 
-        server = connector.getServer();
-        server.setConnectors(new Connector[] {connector});
+            connector.setIdleTimeout(idleTimeout);
+            if (acceptQueueSize != JETTY_DEFAULT) {
+                connector.setAcceptQueueSize(acceptQueueSize);
+            }
+            connector.setHost(host);
+            connector.setPort(port);
+            connectors.add(connector);
+        }
+        if (unixSocket != null) {
+            connectors.add(createUnixSocketConnector(server, unixSocket));
+        }
+        server.setConnectors(connectors.toArray(new Connector[connectors.size()]));
 
         // Handle static file routes
         if (staticFilesFolder == null && externalFilesFolder == null) {
@@ -108,6 +299,8 @@ public class SparkServer {
             // Set external static file location
             setExternalStaticFileLocationIfPresent(externalFilesFolder, handlersInList);
 
+            compressStaticFilesIfEnabled(handlersInList);
+
             HandlerList handlers = new HandlerList();
             handlers.setHandlers(handlersInList.toArray(new Handler[handlersInList.size()]));
             server.setHandler(handlers);
@@ -115,7 +308,12 @@ public class SparkServer {
 
         try {
             System.out.println("== " + NAME + " has ignited ..."); // NOSONAR
-            System.out.println(">> Listening on " + host + ":" + port); // NOSONAR
+            if (tcpConnector) {
+                System.out.println(">> Listening on " + host + ":" + port); // NOSONAR
+            }
+            if (unixSocket != null) {
+                System.out.println(">> Listening on unix socket " + unixSocket); // NOSONAR
+            }
 
             server.start();
             server.join();
@@ -142,18 +340,19 @@ public class SparkServer {
      * Creates a secure jetty socket connector. Keystore required, truststore
      * optional. If truststore not specifed keystore will be reused.
      *
+     * @param server             the Jetty server
      * @param keystoreFile       The keystore file location as string
      * @param keystorePassword   the password for the keystore
      * @param truststoreFile     the truststore file location as string, leave null to reuse keystore
      * @param truststorePassword the trust store password
      * @return a secure socket connector
      */
-    private static ServerConnector createSecureSocketConnector(String keystoreFile,
+    private ServerConnector createSecureSocketConnector(Server server, String keystoreFile,
                                                                String keystorePassword, String truststoreFile,
                                                                String truststorePassword) {
 
-        SslContextFactory sslContextFactory = new SslContextFactory(
-                keystoreFile);
+        SslContextFactory sslContextFactory = new SslContextFactory.Server();
+        sslContextFactory.setKeyStorePath(keystoreFile);
 
         if (keystorePassword != null) {
             sslContextFactory.setKeyStorePassword(keystorePassword);
@@ -164,16 +363,92 @@ public class SparkServer {
         if (truststorePassword != null) {
             sslContextFactory.setTrustStorePassword(truststorePassword);
         }
-        return new ServerConnector(new Server(), sslContextFactory);
+
+        HttpConfiguration configuration = createHttpConfiguration();
+        if (http2 == null) {
+            return createConnector(server,
+                                   new SslConnectionFactory(sslContextFactory, HttpVersion.HTTP_1_1.asString()),
+                                   new HttpConnectionFactory(configuration));
+        }
+        require(ALPN_CLASS, "HTTP/2 over TLS needs an ALPN module on the classpath: "
+                + "org.eclipse.jetty:jetty-alpn-java-server on Java 9 or later, "
+                + "org.eclipse.jetty:jetty-alpn-openjdk8-server on Java 8 (8u252 or later)");
+        return createConnector(server, http2.secure(sslContextFactory, configuration));
     }
 
     /**
      * Creates an ordinary, non-secured Jetty server connector.
      *
+     * @param server the Jetty server
      * @return - a server connector
      */
-    private static ServerConnector createSocketConnector() {
-        return new ServerConnector(new Server());
+    private ServerConnector createSocketConnector(Server server) {
+        return createConnector(server, createPlainConnectionFactories());
+    }
+
+    /**
+     * Creates a Jetty connector listening on a Unix domain socket.
+     *
+     * @param server     the Jetty server
+     * @param unixSocket the path of the socket file
+     * @return a unix socket connector
+     */
+    private Connector createUnixSocketConnector(Server server, String unixSocket) {
+        return UnixSocketConnectors.create(server, unixSocket, selectors, idleTimeout, acceptQueueSize,
+                                           createPlainConnectionFactories());
+    }
+
+    private ConnectionFactory[] createPlainConnectionFactories() {
+        HttpConfiguration configuration = createHttpConfiguration();
+        if (http2 == null) {
+            return new ConnectionFactory[] {new HttpConnectionFactory(configuration)};
+        }
+        return new ConnectionFactory[] {new HttpConnectionFactory(configuration), http2.cleartext(configuration)};
+    }
+
+    private ServerConnector createConnector(Server server, ConnectionFactory... factories) {
+        return new ServerConnector(server, null, null, null, acceptors, selectors, factories);
+    }
+
+    private HttpConfiguration createHttpConfiguration() {
+        HttpConfiguration configuration = new HttpConfiguration();
+        if (requestHeaderSize != JETTY_DEFAULT) {
+            configuration.setRequestHeaderSize(requestHeaderSize);
+        }
+        if (responseHeaderSize != JETTY_DEFAULT) {
+            configuration.setResponseHeaderSize(responseHeaderSize);
+        }
+        if (outputBufferSize != JETTY_DEFAULT) {
+            configuration.setOutputBufferSize(outputBufferSize);
+        }
+        return configuration;
+    }
+
+    /**
+     * Creates the thread pool of the Jetty server.
+     *
+     * @return the thread pool
+     */
+    private ThreadPool createThreadPool() {
+        if (threadPoolImplementation == ThreadPoolImplementation.virtual) {
+            if (VirtualThreadPool.isSupported()) {
+                return new VirtualThreadPool();
+            }
+            LOG.warn("Virtual threads need JDK 21 or later, handling requests on platform threads, "
+                             + "sized by threadPool(minThreads, maxThreads, idleTimeoutMillis) if set");
+        }
+        QueuedThreadPool threadPool = new QueuedThreadPool();
+        // the maximum first, the minimum must not exceed it
+        if (maxThreads != JETTY_DEFAULT) {
+            threadPool.setMaxThreads(maxThreads);
+        }
+        if (minThreads != JETTY_DEFAULT) {
+            threadPool.setMinThreads(minThreads);
+        }
+        if (threadIdleTimeout != JETTY_DEFAULT) {
+            threadPool.setIdleTimeout(threadIdleTimeout);
+        }
+        return threadPool;
     }
 
     /**
@@ -195,17 +470,33 @@ public class SparkServer {
     private static void setExternalStaticFileLocationIfPresent(String externalFilesRoute,
                                                                List<Handler> handlersInList) {
         if (externalFilesRoute != null) {
-            try {
-                ResourceHandler externalResourceHandler = new ResourceHandler();
-                Resource externalStaticResources = Resource.newResource(new File(externalFilesRoute));
-                externalResourceHandler.setBaseResource(externalStaticResources);
-                externalResourceHandler.setWelcomeFiles(new String[] {"index.html"});
-                handlersInList.add(externalResourceHandler);
-            } catch (IOException exception) {
-                exception.printStackTrace(); // NOSONAR
-                System.err.println("Error during initialize external resource " + externalFilesRoute); // NOSONAR
-            }
+            ResourceHandler externalResourceHandler = new ResourceHandler();
+            Resource externalStaticResources = Resource.newResource(new File(externalFilesRoute));
+            externalResourceHandler.setBaseResource(externalStaticResources);
+            externalResourceHandler.setWelcomeFiles(new String[] {"index.html"});
+            handlersInList.add(externalResourceHandler);
         }
     }
 
+    /**
+     * Wraps the static file handlers, following the spark handler, in a GzipHandler if compression is enabled
+     */
+    private void compressStaticFilesIfEnabled(List<Handler> handlersInList) {
+        if (compression == null || !compression.isEnabled() || handlersInList.size() < 2) {
+            return;
+        }
+        List<Handler> resourceHandlers = handlersInList.subList(1, handlersInList.size());
+        HandlerList resources = new HandlerList();
+        resources.setHandlers(resourceHandlers.toArray(new Handler[resourceHandlers.size()]));
+
+        GzipHandler gzipHandler = new GzipHandler();
+        gzipHandler.setMinGzipSize(compression.getMinSize());
+        gzipHandler.setCompressionLevel(compression.getLevel());
+        gzipHandler.setIncludedMimeTypes(compression.getMimeTypes());
+        gzipHandler.setHandler(resources);
+
+        resourceHandlers.clear();
+        handlersInList.add(gzipHandler);
+    }
+
 }
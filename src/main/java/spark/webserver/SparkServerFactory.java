@@ -16,6 +16,7 @@
  */
 package spark.webserver;
 
+import spark.Compression;
 import spark.route.RouteMatcherFactory;
 
 /**
@@ -27,10 +28,30 @@ public final class SparkServerFactory {
     }
 
     public static SparkServer create(boolean hasMultipleHandler) {
+        return create(hasMultipleHandler, MatcherFilter.DEFAULT_ASYNC_TIMEOUT);
+    }
+
+    public static SparkServer create(boolean hasMultipleHandler, long asyncTimeout) {
+        return create(hasMultipleHandler, asyncTimeout, null);
+    }
+
+    public static SparkServer create(boolean hasMultipleHandler, long asyncTimeout, Compression compression) {
+        return create(hasMultipleHandler, asyncTimeout, compression, false);
+    }
+
+    public static SparkServer create(boolean hasMultipleHandler,
+                                     long asyncTimeout,
+                                     Compression compression,
+                                     boolean etags) {
         MatcherFilter matcherFilter = new MatcherFilter(RouteMatcherFactory.get(), false, hasMultipleHandler);
+        matcherFilter.setAsyncTimeout(asyncTimeout);
+        matcherFilter.setCompression(compression);
+        matcherFilter.setEtags(etags);
         matcherFilter.init(null);
         JettyHandler handler = new JettyHandler(matcherFilter);
-        return new SparkServer(handler);
+        SparkServer server = new SparkServer(handler);
+        server.setCompression(compression);
+        return server;
     }
 
 }
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.webserver;
+
+import org.eclipse.jetty.server.ConnectionFactory;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.unixsocket.UnixSocketConnector;
+
+/**
+ * Creates the connector listening on a Unix domain socket. jetty-unixsocket is an optional dependency, so it is
+ * only referred to from here: this class is only loaded when a socket is set, after
+ * {@link SparkServer#checkUnixSocketAvailable()} made sure it is on the classpath.
+ */
+final class UnixSocketConnectors {
+
+    private UnixSocketConnectors() {
+    }
+
+    /**
+     * @param server          the Jetty server
+     * @param unixSocket      the path of the socket file
+     * @param selectors       the number of selectors or JETTY_DEFAULT
+     * @param idleTimeout     the idle timeout of the connections in milliseconds
+     * @param acceptQueueSize the size of the accept queue or JETTY_DEFAULT
+     * @param factories       the connection factories
+     * @return a unix socket connector
+     */
+    static Connector create(Server server, String unixSocket, int selectors, long idleTimeout, int acceptQueueSize,
+                            ConnectionFactory... factories) {
+        UnixSocketConnector connector = new UnixSocketConnector(server, null, null, null, selectors, factories);
+        connector.setUnixSocket(unixSocket);
+        connector.setIdleTimeout(idleTimeout);
+        if (acceptQueueSize != SparkServer.JETTY_DEFAULT) {
+            connector.setAcceptQueueSize(acceptQueueSize);
+        }
+        return connector;
+    }
+
+}
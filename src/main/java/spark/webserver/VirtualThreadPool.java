@@ -0,0 +1,107 @@
+/*
+ * Copyright 2011- Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.webserver;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+/**
+ * Jetty thread pool running every task on a new virtual thread (JDK 21+), so a handler blocking on I/O does not
+ * hold a platform thread and the number of concurrent requests is not capped by a pool size. Spark is built for
+ * Java 8, so the virtual thread executor is looked up reflectively, see {@link #isSupported()}.
+ */
+final class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool {
+
+    private static final long STOP_TIMEOUT = 5000;
+
+    private final AtomicInteger running = new AtomicInteger();
+    private volatile ExecutorService executor;
+    private volatile CountDownLatch stopped = new CountDownLatch(1);
+
+    /**
+     * @return true if the running JVM has virtual threads
+     */
+    static boolean isSupported() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        stopped = new CountDownLatch(1);
+        executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        ExecutorService current = executor;
+        current.shutdown();
+        if (!current.awaitTermination(STOP_TIMEOUT, TimeUnit.MILLISECONDS)) {
+            current.shutdownNow();
+        }
+        stopped.countDown();
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        ExecutorService current = executor;
+        if (current == null) {
+            throw new RejectedExecutionException("Thread pool not started");
+        }
+        current.execute(() -> {
+            running.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                running.decrementAndGet();
+            }
+        });
+    }
+
+    @Override
+    public void join() throws InterruptedException {
+        stopped.await();
+    }
+
+    @Override
+    public int getThreads() {
+        return running.get();
+    }
+
+    @Override
+    public int getIdleThreads() {
+        // threads are started per task, none waits for work
+        return 0;
+    }
+
+    @Override
+    public boolean isLowOnThreads() {
+        return false;
+    }
+
+}
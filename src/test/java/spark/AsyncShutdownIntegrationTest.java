@@ -0,0 +1,63 @@
+package spark;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import junit.framework.Assert;
+import spark.util.SparkTestUtil;
+import spark.util.SparkTestUtil.UrlResponse;
+
+import static spark.Spark.get;
+
+public class AsyncShutdownIntegrationTest {
+
+    private static final String TIMEOUT_THREAD = "spark-async-timeout";
+
+    static SparkTestUtil testUtil;
+
+    @AfterClass
+    public static void tearDown() {
+        Spark.stop();
+    }
+
+    @BeforeClass
+    public static void setup() {
+        testUtil = new SparkTestUtil(4567);
+
+        get("/async", (request, response) -> {
+            return CompletableFuture.supplyAsync(() -> "Completed");
+        });
+
+        try {
+            Thread.sleep(500);
+        } catch (Exception e) {
+        }
+    }
+
+    private static boolean isTimeoutThreadAlive() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals(TIMEOUT_THREAD) && thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testStoppingTheServerStopsTheTimeoutThread() throws Exception {
+        UrlResponse response = testUtil.doMethod("GET", "/async", null);
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("Completed", response.body);
+        Assert.assertTrue(isTimeoutThreadAlive());
+
+        Spark.stop();
+        for (int i = 0; i < 100 && isTimeoutThreadAlive(); i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertFalse(isTimeoutThreadAlive());
+    }
+
+}
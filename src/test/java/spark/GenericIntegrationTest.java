@@ -1,8 +1,19 @@
 package spark;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -13,6 +24,7 @@ import spark.examples.exception.BaseException;
 import spark.examples.exception.NotFoundException;
 import spark.examples.exception.SubclassOfBaseException;
 import spark.util.SparkTestUtil;
+import spark.utils.IOUtils;
 import spark.util.SparkTestUtil.UrlResponse;
 
 import static spark.Spark.after;
@@ -29,9 +41,57 @@ public class GenericIntegrationTest {
 
     private static final String NOT_FOUND_BRO = "Not found bro";
 
+    private static final long LAST_MODIFIED = 1400000000000L;
+
+    private static final AtomicLong CATALOG_VERSION = new AtomicLong();
+    private static final AtomicInteger CATALOG_RENDERS = new AtomicInteger();
+    private static final AtomicInteger CLOSED_BODIES = new AtomicInteger();
+
     static SparkTestUtil testUtil;
     static File tmpExternalFile;
 
+    private static String largeText() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            text.append("r\u00e4ksm\u00f6rg\u00e5s \ud83d\ude00 ");
+        }
+        return text.toString();
+    }
+
+    private static HttpURLConnection request(String path, String acceptEncoding) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:4567" + path).openConnection();
+        connection.setRequestProperty("Accept", "text/html");
+        connection.setRequestProperty("Accept-Encoding", acceptEncoding);
+        return connection;
+    }
+
+    private static InputStream closeableBody() {
+        return new ByteArrayInputStream("Not written".getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public void close() {
+                CLOSED_BODIES.incrementAndGet();
+            }
+        };
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            IOUtils.copyLarge(in, bytes);
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     @AfterClass
     public static void tearDown() {
         Spark.stop();
@@ -51,6 +111,11 @@ public class GenericIntegrationTest {
         writer.flush();
         writer.close();
 
+        Spark.asyncTimeout(1000);
+        Spark.threadPool(8, 64, 60000);
+        Spark.connector(-1, -1, 128, 30000);
+        Spark.bufferSizes(16 * 1024, -1, -1);
+        Spark.compression();
         staticFileLocation("/public");
         externalStaticFileLocation(System.getProperty("java.io.tmpdir"));
 
@@ -98,12 +163,132 @@ public class GenericIntegrationTest {
             return "Hello Root!";
         });
 
+        before("/etag/*", (request, response) -> {
+            response.etags(true);
+        });
+
+        get("/etag/text", (request, response) -> {
+            return largeText();
+        });
+
+        get("/etag/template", (request, response) -> {
+            return new ModelAndView(request.queryParams("name"), "my view");
+        }, new TemplateEngine() {
+            public String render(ModelAndView modelAndView) {
+                return modelAndView.getModel() + " from " + modelAndView.getViewName();
+            }
+        });
+
+        get("/etag/transformed", (request, response) -> {
+            return new String[] {"a", "b"};
+        }, model -> String.join(",", (String[]) model));
+
         post("/poster", (request, response) -> {
             String body = request.body();
             response.status(201); // created
             return "Body was: " + body;
         });
 
+        before("/filteredposter", (request, response) -> {
+            response.header("bodyInFilter", request.body());
+        });
+
+        post("/filteredposter", (request, response) -> {
+            return "Body was: " + request.body();
+        });
+
+        get("/largetext", (request, response) -> {
+            return largeText();
+        });
+
+        get("/uncompressed", (request, response) -> {
+            response.compression(Compression.DISABLED);
+            return largeText();
+        });
+
+        get("/catalog/:id", (request, response) -> {
+            CATALOG_RENDERS.incrementAndGet();
+            return "item " + request.params(":id") + " version " + CATALOG_VERSION.get();
+        }, Validator.version(request -> CATALOG_VERSION.get()));
+
+        get("/lastmodified", (request, response) -> {
+            return "Last modified";
+        }, model -> model.toString().toUpperCase(), Validator.lastModified(request -> LAST_MODIFIED));
+
+        get("/async", (request, response) -> {
+            String name = request.queryParams("name");
+            return CompletableFuture.supplyAsync(() -> "Hello " + name);
+        });
+
+        after("/async", (request, response) -> {
+            response.header("after", "async");
+        });
+
+        get("/asyncfailure", (request, response) -> {
+            CompletableFuture<String> future = new CompletableFuture<>();
+            new Thread(() -> future.completeExceptionally(new NotFoundException())).start();
+            return future;
+        });
+
+        get("/asyncnevercompletes", (request, response) -> {
+            return new CompletableFuture<String>();
+        });
+
+        get("/asyncslow", (request, response) -> {
+            // longer than the global timeout of the test
+            response.asyncTimeout(5000);
+            return CompletableFuture.supplyAsync(() -> {
+                sleep(1500);
+                return "Slow";
+            });
+        });
+
+        get("/asyncattimeout", (request, response) -> {
+            response.asyncTimeout(50);
+            return CompletableFuture.supplyAsync(() -> {
+                sleep(50);
+                return "In time";
+            });
+        });
+
+        get("/bytes", (request, response) -> {
+            return "Some bytes".getBytes(StandardCharsets.UTF_8);
+        });
+
+        get("/inputstream", (request, response) -> {
+            return new ByteArrayInputStream("Streamed content".getBytes(StandardCharsets.UTF_8));
+        });
+
+        get("/closeable/notmodified", (request, response) -> {
+            response.status(304);
+            return closeableBody();
+        });
+
+        get("/closeable/replaced", (request, response) -> {
+            return closeableBody();
+        });
+
+        after("/closeable/replaced", (request, response) -> {
+            response.body("Replaced");
+        });
+
+        get("/closeable/halted", (request, response) -> {
+            return closeableBody();
+        });
+
+        after("/closeable/halted", (request, response) -> {
+            halt(401, "Halted");
+        });
+
+        get("/streamingoutput", (request, response) -> {
+            response.type("text/plain");
+            return (StreamingOutput) out -> out.write("Written by the route".getBytes(StandardCharsets.UTF_8));
+        });
+
+        get("/externalfile", (request, response) -> {
+            return tmpExternalFile;
+        });
+
         patch("/patcher", (request, response) -> {
             String body = request.body();
             response.status(200);
@@ -181,6 +366,17 @@ public class GenericIntegrationTest {
         }
     }
 
+    @Test
+    public void testRequestsDoNotFreezeTheRoutes() {
+        try {
+            UrlResponse response = testUtil.doMethod("GET", "/hi", null);
+            Assert.assertEquals(200, response.status);
+            Assert.assertFalse(Spark.routeMatcher.isFrozen());
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     @Test
     public void testHiHead() {
         try {
@@ -307,6 +503,19 @@ public class GenericIntegrationTest {
         }
     }
 
+    @Test
+    public void testUnknownMethodRunsBeforeFilters() throws Exception {
+        UrlResponse response = testUtil.doMethod("PROPFIND", "/secretcontent/whateva", null);
+        Assert.assertEquals(401, response.status);
+        Assert.assertEquals("Go Away!", response.body);
+    }
+
+    @Test
+    public void testUnknownMethodIsNotAllowed() throws Exception {
+        UrlResponse response = testUtil.doMethod("PROPFIND", "/hi", null);
+        Assert.assertEquals(405, response.status);
+    }
+
     @Test
     public void testNotFound() throws Exception {
         try {
@@ -329,6 +538,135 @@ public class GenericIntegrationTest {
         }
     }
 
+    @Test
+    public void testBodyReadByFilterIsStillReadableByRoute() throws Exception {
+        UrlResponse response = testUtil.doMethod("POST", "/filteredposter", "Fo shizzy");
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("Fo shizzy", response.headers.get("bodyInFilter"));
+        Assert.assertEquals("Body was: Fo shizzy", response.body);
+    }
+
+    @Test
+    public void testLargeTextBodyHasContentLength() throws Exception {
+        UrlResponse response = testUtil.doMethod("GET", "/largetext", null);
+        Assert.assertEquals(200, response.status);
+        byte[] expected = response.body.getBytes(StandardCharsets.UTF_8);
+        Assert.assertEquals(5000 * "r\u00e4ksm\u00f6rg\u00e5s \ud83d\ude00 ".getBytes(StandardCharsets.UTF_8).length,
+                            expected.length);
+        Assert.assertEquals(Integer.toString(expected.length), response.headers.get("Content-Length"));
+    }
+
+    @Test
+    public void testRequestHeaderLargerThanJettyDefault() throws Exception {
+        StringBuilder acceptType = new StringBuilder("text/html");
+        while (acceptType.length() < 10 * 1024) {
+            acceptType.append(", application/x-padding");
+        }
+        UrlResponse response = testUtil.doMethod("GET", "/hi", null, acceptType.toString());
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("Hello World!", response.body);
+    }
+
+    @Test
+    public void testAsyncRoute() throws Exception {
+        UrlResponse response = testUtil.doMethod("GET", "/async?name=async", null);
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("Hello async", response.body);
+        Assert.assertEquals("async", response.headers.get("after"));
+    }
+
+    @Test
+    public void testAsyncRouteFailureIsMapped() throws Exception {
+        UrlResponse response = testUtil.doMethod("GET", "/asyncfailure", null);
+        Assert.assertEquals(404, response.status);
+        Assert.assertEquals(NOT_FOUND_BRO, response.body);
+    }
+
+    @Test
+    public void testAsyncRouteTimesOut() throws Exception {
+        UrlResponse response = testUtil.doMethod("GET", "/asyncnevercompletes", null);
+        Assert.assertEquals(503, response.status);
+    }
+
+    @Test
+    public void testAsyncRouteWithLongerTimeout() throws Exception {
+        UrlResponse response = testUtil.doMethod("GET", "/asyncslow", null);
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("Slow", response.body);
+    }
+
+    @Test
+    public void testAsyncRouteCompletingAtTheTimeout() throws Exception {
+        // either the stage or the timeout answers, never both and never with an error
+        for (int i = 0; i < 20; i++) {
+            UrlResponse response = testUtil.doMethod("GET", "/asyncattimeout", null);
+            if (response.status == 200) {
+                Assert.assertEquals("In time", response.body);
+            } else {
+                Assert.assertEquals(503, response.status);
+                Assert.assertTrue(response.body.contains("did not complete in time"));
+            }
+        }
+    }
+
+    @Test
+    public void testByteArrayBody() throws Exception {
+        UrlResponse response = testUtil.doMethod("GET", "/bytes", null);
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("Some bytes", response.body);
+        Assert.assertEquals("application/octet-stream", response.headers.get("Content-Type"));
+        Assert.assertEquals("10", response.headers.get("Content-Length"));
+    }
+
+    @Test
+    public void testInputStreamBody() throws Exception {
+        UrlResponse response = testUtil.doMethod("GET", "/inputstream", null);
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("Streamed content", response.body);
+    }
+
+    @Test
+    public void testCloseableBodyOfNotModifiedResponseIsClosed() throws Exception {
+        int closed = CLOSED_BODIES.get();
+        UrlResponse response = testUtil.doMethod("GET", "/closeable/notmodified", null);
+        Assert.assertEquals(304, response.status);
+        Assert.assertEquals(closed + 1, CLOSED_BODIES.get());
+    }
+
+    @Test
+    public void testCloseableBodyReplacedByAfterFilterIsClosed() throws Exception {
+        int closed = CLOSED_BODIES.get();
+        UrlResponse response = testUtil.doMethod("GET", "/closeable/replaced", null);
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("Replaced", response.body);
+        Assert.assertEquals(closed + 1, CLOSED_BODIES.get());
+    }
+
+    @Test
+    public void testCloseableBodyReplacedByHaltIsClosed() throws Exception {
+        int closed = CLOSED_BODIES.get();
+        UrlResponse response = testUtil.doMethod("GET", "/closeable/halted", null);
+        Assert.assertEquals(401, response.status);
+        Assert.assertEquals("Halted", response.body);
+        Assert.assertEquals(closed + 1, CLOSED_BODIES.get());
+    }
+
+    @Test
+    public void testStreamingOutputBody() throws Exception {
+        UrlResponse response = testUtil.doMethod("GET", "/streamingoutput", null);
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("Written by the route", response.body);
+        Assert.assertTrue(response.headers.get("Content-Type").startsWith("text/plain"));
+    }
+
+    @Test
+    public void testFileBody() throws Exception {
+        UrlResponse response = testUtil.doMethod("GET", "/externalfile", null);
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("Content of external file", response.body);
+        Assert.assertEquals("24", response.headers.get("Content-Length"));
+    }
+
     @Test
     public void testPatch() {
         try {
@@ -374,4 +712,139 @@ public class GenericIntegrationTest {
         Assert.assertEquals(NOT_FOUND_BRO, response.body);
         Assert.assertEquals(404, response.status);
     }
+
+    @Test
+    public void testGzipCompression() throws Exception {
+        HttpURLConnection connection = request("/largetext", "gzip, deflate");
+        Assert.assertEquals(200, connection.getResponseCode());
+        Assert.assertEquals("gzip", connection.getHeaderField("Content-Encoding"));
+        Assert.assertEquals("Accept-Encoding", connection.getHeaderField("Vary"));
+        Assert.assertEquals(largeText(), read(new GZIPInputStream(connection.getInputStream())));
+    }
+
+    @Test
+    public void testDeflateCompression() throws Exception {
+        HttpURLConnection connection = request("/largetext", "gzip;q=0, deflate");
+        Assert.assertEquals(200, connection.getResponseCode());
+        Assert.assertEquals("deflate", connection.getHeaderField("Content-Encoding"));
+        Assert.assertEquals(largeText(), read(new InflaterInputStream(connection.getInputStream())));
+    }
+
+    @Test
+    public void testSmallBodyNotCompressed() throws Exception {
+        HttpURLConnection connection = request("/hi", "gzip");
+        Assert.assertEquals(200, connection.getResponseCode());
+        Assert.assertNull(connection.getHeaderField("Content-Encoding"));
+        Assert.assertEquals("Hello World!", read(connection.getInputStream()));
+    }
+
+    @Test
+    public void testCompressionDisabledForRoute() throws Exception {
+        HttpURLConnection connection = request("/uncompressed", "gzip");
+        Assert.assertEquals(200, connection.getResponseCode());
+        Assert.assertNull(connection.getHeaderField("Content-Encoding"));
+        Assert.assertEquals(largeText(), read(connection.getInputStream()));
+    }
+
+    @Test
+    public void testNotCompressedWithoutAcceptEncoding() throws Exception {
+        HttpURLConnection connection = request("/largetext", "identity");
+        Assert.assertEquals(200, connection.getResponseCode());
+        Assert.assertNull(connection.getHeaderField("Content-Encoding"));
+        Assert.assertEquals("Accept-Encoding", connection.getHeaderField("Vary"));
+        Assert.assertEquals(largeText(), read(connection.getInputStream()));
+    }
+
+    @Test
+    public void testEtagAndNotModified() throws Exception {
+        HttpURLConnection connection = request("/etag/text", "identity");
+        Assert.assertEquals(200, connection.getResponseCode());
+        String etag = connection.getHeaderField("ETag");
+        Assert.assertTrue(etag, etag.startsWith("W/\""));
+        Assert.assertEquals(largeText(), read(connection.getInputStream()));
+
+        connection = request("/etag/text", "identity");
+        connection.setRequestProperty("If-None-Match", "\"other\", " + etag);
+        Assert.assertEquals(304, connection.getResponseCode());
+        Assert.assertEquals(etag, connection.getHeaderField("ETag"));
+        Assert.assertNull(connection.getHeaderField("Content-Encoding"));
+
+        connection = request("/etag/text", "gzip");
+        connection.setRequestProperty("If-None-Match", "W/\"other\"");
+        Assert.assertEquals(200, connection.getResponseCode());
+        Assert.assertEquals(etag, connection.getHeaderField("ETag"));
+        Assert.assertEquals(largeText(), read(new GZIPInputStream(connection.getInputStream())));
+    }
+
+    @Test
+    public void testEtagOfRenderedBody() throws Exception {
+        HttpURLConnection connection = request("/etag/template?name=Hello", "identity");
+        Assert.assertEquals(200, connection.getResponseCode());
+        String etag = connection.getHeaderField("ETag");
+        Assert.assertEquals("Hello from my view", read(connection.getInputStream()));
+
+        connection = request("/etag/template?name=Bye", "identity");
+        Assert.assertEquals(200, connection.getResponseCode());
+        Assert.assertFalse(etag.equals(connection.getHeaderField("ETag")));
+
+        connection = request("/etag/template?name=Hello", "identity");
+        connection.setRequestProperty("If-None-Match", etag);
+        Assert.assertEquals(304, connection.getResponseCode());
+
+        connection = request("/etag/transformed", "identity");
+        Assert.assertEquals(200, connection.getResponseCode());
+        etag = connection.getHeaderField("ETag");
+        Assert.assertEquals("a,b", read(connection.getInputStream()));
+
+        connection = request("/etag/transformed", "identity");
+        connection.setRequestProperty("If-None-Match", etag);
+        Assert.assertEquals(304, connection.getResponseCode());
+    }
+
+    @Test
+    public void testNoEtagUnlessEnabled() throws Exception {
+        HttpURLConnection connection = request("/hi", "identity");
+        Assert.assertEquals(200, connection.getResponseCode());
+        Assert.assertNull(connection.getHeaderField("ETag"));
+    }
+
+    @Test
+    public void testConditionalRouteNotInvokedWhenNotModified() throws Exception {
+        HttpURLConnection connection = request("/catalog/42", "identity");
+        Assert.assertEquals(200, connection.getResponseCode());
+        String etag = connection.getHeaderField("ETag");
+        Assert.assertEquals("item 42 version " + CATALOG_VERSION.get(), read(connection.getInputStream()));
+        int renders = CATALOG_RENDERS.get();
+
+        connection = request("/catalog/42", "identity");
+        connection.setRequestProperty("If-None-Match", etag);
+        Assert.assertEquals(304, connection.getResponseCode());
+        Assert.assertEquals(etag, connection.getHeaderField("ETag"));
+        Assert.assertEquals(renders, CATALOG_RENDERS.get());
+
+        CATALOG_VERSION.incrementAndGet();
+        connection = request("/catalog/42", "identity");
+        connection.setRequestProperty("If-None-Match", etag);
+        Assert.assertEquals(200, connection.getResponseCode());
+        Assert.assertFalse(etag.equals(connection.getHeaderField("ETag")));
+        Assert.assertEquals("item 42 version " + CATALOG_VERSION.get(), read(connection.getInputStream()));
+        Assert.assertEquals(renders + 1, CATALOG_RENDERS.get());
+    }
+
+    @Test
+    public void testConditionalRouteWithLastModified() throws Exception {
+        HttpURLConnection connection = request("/lastmodified", "identity");
+        Assert.assertEquals(200, connection.getResponseCode());
+        Assert.assertEquals(LAST_MODIFIED, connection.getLastModified());
+        Assert.assertEquals("LAST MODIFIED", read(connection.getInputStream()));
+
+        connection = request("/lastmodified", "identity");
+        connection.setIfModifiedSince(LAST_MODIFIED);
+        Assert.assertEquals(304, connection.getResponseCode());
+
+        connection = request("/lastmodified", "identity");
+        connection.setIfModifiedSince(LAST_MODIFIED - 1000);
+        Assert.assertEquals(200, connection.getResponseCode());
+        Assert.assertEquals("LAST MODIFIED", read(connection.getInputStream()));
+    }
 }
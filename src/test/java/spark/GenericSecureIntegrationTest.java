@@ -1,5 +1,11 @@
 package spark;
 
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http2.client.HTTP2Client;
+import org.eclipse.jetty.http2.client.http.HttpClientTransportOverHTTP2;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -33,6 +39,7 @@ public class GenericSecureIntegrationTest {
         // but offers a default included store if not.
         Spark.secure(SparkTestUtil.getKeyStoreLocation(),
                      SparkTestUtil.getKeystorePassword(), null, null);
+        Spark.http2();
 
         before("/protected/*", (request, response) -> {
             halt(401, "Go Away!");
@@ -76,6 +83,22 @@ public class GenericSecureIntegrationTest {
         }
     }
 
+    @Test
+    public void testH2NegotiatedWithAlpn() throws Exception {
+        HTTP2Client transport = new HTTP2Client();
+        HttpClient client = new HttpClient(new HttpClientTransportOverHTTP2(transport),
+                                           new SslContextFactory.Client(true));
+        client.start();
+        try {
+            ContentResponse response = client.GET("https://localhost:4567/hi");
+            Assert.assertEquals(200, response.getStatus());
+            Assert.assertEquals(HttpVersion.HTTP_2, response.getVersion());
+            Assert.assertEquals("Hello World!", response.getContentAsString());
+        } finally {
+            client.stop();
+        }
+    }
+
     @Test
     public void testGetHi() {
         try {
@@ -0,0 +1,76 @@
+package spark;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http2.client.HTTP2Client;
+import org.eclipse.jetty.http2.client.http.HttpClientTransportOverHTTP2;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import junit.framework.Assert;
+import spark.util.SparkTestUtil;
+import spark.util.SparkTestUtil.UrlResponse;
+
+import static spark.Spark.get;
+
+public class Http2IntegrationTest {
+
+    private static final int PORT = 4567;
+
+    static SparkTestUtil testUtil;
+    static HttpClient http2Client;
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        Spark.stop();
+        if (http2Client != null) {
+            http2Client.stop();
+        }
+    }
+
+    @BeforeClass
+    public static void setup() throws Exception {
+        testUtil = new SparkTestUtil(PORT);
+
+        Spark.http2(16, 256 * 1024, 1024 * 1024);
+
+        get("/hi", (request, response) -> {
+            return "Hello " + request.raw().getProtocol();
+        });
+
+        // the client sends h2c with prior knowledge on plain connections
+        http2Client = new HttpClient(new HttpClientTransportOverHTTP2(new HTTP2Client()), null);
+        http2Client.start();
+
+        try {
+            Thread.sleep(500);
+        } catch (Exception e) {
+        }
+    }
+
+    @Test
+    public void testH2c() throws Exception {
+        ContentResponse response = http2Client.GET("http://localhost:" + PORT + "/hi");
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals(HttpVersion.HTTP_2, response.getVersion());
+        Assert.assertEquals("Hello HTTP/2.0", response.getContentAsString());
+    }
+
+    @Test
+    public void testManyRequestsOnOneConnection() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            ContentResponse response = http2Client.GET("http://localhost:" + PORT + "/hi");
+            Assert.assertEquals(200, response.getStatus());
+        }
+    }
+
+    @Test
+    public void testHttp1StillServed() throws Exception {
+        UrlResponse response = testUtil.doMethod("GET", "/hi", null);
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("Hello HTTP/1.1", response.body);
+    }
+
+}
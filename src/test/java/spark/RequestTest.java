@@ -6,6 +6,7 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.security.Principal;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -24,6 +25,7 @@ import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpUpgradeHandler;
 import javax.servlet.http.Part;
 
 import org.junit.Test;
@@ -82,6 +84,18 @@ public class RequestTest {
         assertEquals("Should have delegated getting the context path", THE_CONTEXT_PATH, request.contextPath());
     }
     
+    @Test
+    public void paramsAndSplatShouldBeReadFromTheMatchedPath() {
+        RouteMatch match = new RouteMatch(HttpMethod.get, null, "/users/:Name/*/files/*", "/users/bob/x/files/a//b",
+                                          "text/html");
+        Request request = new Request(match, new MockedHttpServletRequest(new HashMap<String, String[]>()));
+        assertEquals("bob", request.params("name"));
+        assertEquals("bob", request.params(":NAME"));
+        assertEquals(null, request.params("id"));
+        assertEquals("{:name=bob}", request.params().toString());
+        assertEquals("[x, a/b]", Arrays.toString(request.splat()));
+    }
+
     public static class MockedHttpServletRequest implements HttpServletRequest {
         private Map<String, String[]> params;
 
@@ -423,6 +437,22 @@ public class RequestTest {
 		public Part getPart(String name) throws IOException, ServletException {
 			return null;
 		}
+
+		@Override
+		public long getContentLengthLong() {
+			return 0;
+		}
+
+		@Override
+		public String changeSessionId() {
+			return null;
+		}
+
+		@Override
+		public <T extends HttpUpgradeHandler> T upgrade(Class<T> handlerClass)
+				throws IOException, ServletException {
+			return null;
+		}
         
     }
 }
@@ -0,0 +1,93 @@
+package spark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import jnr.unixsocket.UnixSocketAddress;
+import jnr.unixsocket.UnixSocketChannel;
+import junit.framework.Assert;
+import spark.util.SparkTestUtil;
+import spark.util.SparkTestUtil.UrlResponse;
+
+import static spark.Spark.get;
+
+public class UnixSocketIntegrationTest {
+
+    static SparkTestUtil testUtil;
+    static File socket;
+
+    @AfterClass
+    public static void tearDown() {
+        Spark.stop();
+        if (socket != null) {
+            socket.delete();
+        }
+    }
+
+    @BeforeClass
+    public static void setup() throws Exception {
+        Assume.assumeTrue(System.getProperty("os.name").toLowerCase().contains("linux"));
+
+        testUtil = new SparkTestUtil(4567);
+        socket = File.createTempFile("spark", ".sock");
+        socket.delete();
+
+        Spark.unixSocket(socket.getAbsolutePath());
+
+        get("/hi", (request, response) -> {
+            return "Hello World!";
+        });
+
+        try {
+            Thread.sleep(500);
+        } catch (Exception e) {
+        }
+    }
+
+    @Test
+    public void testGetHiOnUnixSocket() throws Exception {
+        String response = request(socket, "/hi");
+        Assert.assertTrue(response, response.startsWith("HTTP/1.1 200"));
+        Assert.assertTrue(response, response.endsWith("\r\n\r\nHello World!"));
+    }
+
+    @Test
+    public void testNotFoundOnUnixSocket() throws Exception {
+        String response = request(socket, "/nothere");
+        Assert.assertTrue(response, response.startsWith("HTTP/1.1 404"));
+    }
+
+    @Test
+    public void testTcpConnectorStillServed() throws Exception {
+        UrlResponse response = testUtil.doMethod("GET", "/hi", null);
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("Hello World!", response.body);
+    }
+
+    private static String request(File socket, String path) throws Exception {
+        try (UnixSocketChannel channel = UnixSocketChannel.open(new UnixSocketAddress(socket))) {
+            OutputStream out = Channels.newOutputStream(channel);
+            out.write(("GET " + path + " HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n")
+                              .getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            InputStream in = Channels.newInputStream(channel);
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                response.write(buffer, 0, n);
+            }
+            return new String(response.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+}
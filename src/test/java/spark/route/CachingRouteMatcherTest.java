@@ -0,0 +1,47 @@
+package spark.route;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import spark.Request;
+import spark.Response;
+import spark.RouteImpl;
+
+public class CachingRouteMatcherTest {
+
+    @Test
+    public void testResultsAreForgottenWhenRoutesChange() {
+        CachingRouteMatcher matcher = new CachingRouteMatcher(new SimpleRouteMatcher(), 16);
+
+        assertNull(matcher.findTargetForRequestedRoute(HttpMethod.get, "/hi", null));
+        assertNull(matcher.findTargetForRequestedRoute(HttpMethod.get, "/hi", null));
+
+        RouteImpl hi = new RouteImpl("/hi") {
+            @Override
+            public Object handle(Request request, Response response) {
+                return "hi";
+            }
+        };
+        matcher.addRoute(HttpMethod.get, "/hi", "*/*", hi);
+
+        assertEquals(hi, matcher.findTargetForRequestedRoute(HttpMethod.get, "/hi", null).getTarget());
+        assertEquals(hi, matcher.findTargetForRequestedRoute(HttpMethod.get, "/hi", null).getTarget());
+        assertEquals(2, matcher.getHitCount());
+        assertEquals(2, matcher.getMissCount());
+
+        matcher.clearRoutes();
+        assertNull(matcher.findTargetForRequestedRoute(HttpMethod.get, "/hi", null));
+    }
+
+    @Test
+    public void testCacheIsBounded() {
+        CachingRouteMatcher matcher = new CachingRouteMatcher(new SimpleRouteMatcher(), 100);
+        for (int i = 0; i < 10000; i++) {
+            matcher.findTargetForRequestedRoute(HttpMethod.get, "/users/" + i, null);
+        }
+        assertEquals(true, matcher.size() <= 100);
+    }
+
+}
@@ -0,0 +1,70 @@
+package spark.route;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Test;
+
+public class RouteMatcherAllocationTest {
+
+    private static final String BROWSER_ACCEPT = "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8";
+
+    private static final int LOOKUPS = 10000;
+
+    /**
+     * The route match and the path segments it refers to, a few dozen bytes each. Collecting the candidates into
+     * a list and a bitset as large as the route table took several times as much.
+     */
+    private static final long MAX_BYTES_PER_LOOKUP = 256;
+
+    @Test
+    public void testTrieLookupWithAcceptTypeOnlyAllocatesTheMatch() {
+        assertLookupOnlyAllocatesTheMatch(new TrieRouteMatcher());
+    }
+
+    @Test
+    public void testRadixLookupWithAcceptTypeOnlyAllocatesTheMatch() {
+        assertLookupOnlyAllocatesTheMatch(new RadixRouteMatcher());
+    }
+
+    @Test
+    public void testCompiledLookupWithAcceptTypeOnlyAllocatesTheMatch() {
+        assertLookupOnlyAllocatesTheMatch(new CompiledRouteMatcher());
+    }
+
+    private static void assertLookupOnlyAllocatesTheMatch(final RouteMatcher matcher) {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(allocations.isThreadAllocatedMemorySupported());
+        allocations.setThreadAllocatedMemoryEnabled(true);
+
+        matcher.batch(() -> {
+            for (int i = 0; i < 1000; i++) {
+                matcher.addRoute(HttpMethod.get, "/api/resource" + i + "/:id", "application/json", "json " + i);
+                matcher.addRoute(HttpMethod.get, "/api/resource" + i + "/:id", "text/html", "html " + i);
+                matcher.addRoute(HttpMethod.get, "/api/:resource/:id", "*/*", "any " + i);
+                matcher.addRoute(HttpMethod.get, "/files" + i + "/*", "*/*", "files " + i);
+            }
+        });
+        String path = "/api/resource500/42";
+        // warms up the lookup and the cached results of negotiating the accept types
+        for (int i = 0; i < LOOKUPS; i++) {
+            assertEquals("html 500", matcher.findTargetForRequestedRoute(HttpMethod.get, path, BROWSER_ACCEPT)
+                    .getTarget());
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < LOOKUPS; i++) {
+            matcher.findTargetForRequestedRoute(HttpMethod.get, path, BROWSER_ACCEPT);
+        }
+        long bytesPerLookup = (allocations.getThreadAllocatedBytes(threadId) - before) / LOOKUPS;
+        assertTrue(matcher.getClass().getSimpleName() + " allocated " + bytesPerLookup + " bytes per lookup",
+                   bytesPerLookup <= MAX_BYTES_PER_LOOKUP);
+    }
+
+}
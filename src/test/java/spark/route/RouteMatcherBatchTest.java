@@ -0,0 +1,114 @@
+package spark.route;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class RouteMatcherBatchTest {
+
+    @Test
+    public void testSimpleRouteMatcherPublishesBatchAtOnce() {
+        assertBatchPublishedAtOnce(new SimpleRouteMatcher());
+    }
+
+    @Test
+    public void testTrieRouteMatcherPublishesBatchAtOnce() {
+        assertBatchPublishedAtOnce(new TrieRouteMatcher());
+    }
+
+    @Test
+    public void testCachingRouteMatcherPublishesBatchAtOnce() {
+        assertBatchPublishedAtOnce(new CachingRouteMatcher(new TrieRouteMatcher(), 16));
+    }
+
+    @Test
+    public void testRoutesAddedAfterFreezingAreMatched() {
+        RouteMatcher[] matchers = {
+                new SimpleRouteMatcher(), new TrieRouteMatcher(), new RadixRouteMatcher(), new CompiledRouteMatcher(),
+                new CachingRouteMatcher(new TrieRouteMatcher(), 16)
+        };
+        for (RouteMatcher matcher : matchers) {
+            matcher.addRoute(HttpMethod.get, "/users/:id", "*/*", "user");
+            matcher.freeze();
+            assertEquals("user", matcher.findTargetForRequestedRoute(HttpMethod.get, "/users/1", null).getTarget());
+
+            matcher.addRoute(HttpMethod.get, "/users/:id/edit", "*/*", "edit");
+            assertEquals("edit", matcher.findTargetForRequestedRoute(HttpMethod.get, "/users/1/edit", null).getTarget());
+            matcher.freeze();
+            assertEquals("edit", matcher.findTargetForRequestedRoute(HttpMethod.get, "/users/1/edit", null).getTarget());
+        }
+    }
+
+    @Test
+    public void testRoutesAddedAfterFreezingAreCompiled() {
+        TrieRouteMatcher matcher = new TrieRouteMatcher();
+        matcher.addRoute(HttpMethod.get, "/users/:id", "*/*", "user");
+        assertFalse(matcher.isCompiled());
+        matcher.freeze();
+        assertTrue(matcher.isCompiled());
+
+        matcher.addRoute(HttpMethod.get, "/users/:id/edit", "*/*", "edit");
+        assertTrue(matcher.isFrozen());
+        assertEquals("edit", matcher.findTargetForRequestedRoute(HttpMethod.get, "/users/1/edit", null).getTarget());
+        assertTrue(matcher.isCompiled());
+    }
+
+    @Test
+    public void testCompiledRouteMatcherIsFrozenFromTheStart() {
+        CompiledRouteMatcher matcher = new CompiledRouteMatcher();
+        matcher.addRoute(HttpMethod.get, "/users/:id", "*/*", "user");
+        assertTrue(matcher.isFrozen());
+        assertEquals("user", matcher.findTargetForRequestedRoute(HttpMethod.get, "/users/1", null).getTarget());
+        assertTrue(matcher.isCompiled());
+    }
+
+    @Test
+    public void testBatchIsCompiledOnce() {
+        RouteMatcher[] matchers = {
+                new SimpleRouteMatcher(), new TrieRouteMatcher(), new RadixRouteMatcher(), new CompiledRouteMatcher(),
+                new CachingRouteMatcher(new TrieRouteMatcher(), 16)
+        };
+        for (final RouteMatcher matcher : matchers) {
+            String name = matcher.getClass().getSimpleName();
+            int snapshots = matcher.snapshots();
+            matcher.batch(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    matcher.addRoute(HttpMethod.get, "/resource" + i, "*/*", "list " + i);
+                    matcher.addRoute(HttpMethod.get, "/resource" + i + "/:id", "*/*", "get " + i);
+                }
+            });
+            assertEquals(name, snapshots + 1, matcher.snapshots());
+
+            // lookups only read the published routes, they do not compile them again
+            assertEquals(name, "get 999",
+                         matcher.findTargetForRequestedRoute(HttpMethod.get, "/resource999/1", null).getTarget());
+            assertEquals(name, "list 0",
+                         matcher.findTargetForRequestedRoute(HttpMethod.get, "/resource0", null).getTarget());
+            assertEquals(name, snapshots + 1, matcher.snapshots());
+
+            // outside of a batch every route is published, and compiled, on its own
+            matcher.addRoute(HttpMethod.get, "/extra", "*/*", "extra");
+            assertEquals(name, snapshots + 2, matcher.snapshots());
+            assertEquals(name, "extra", matcher.findTargetForRequestedRoute(HttpMethod.get, "/extra", null).getTarget());
+        }
+    }
+
+    private static void assertBatchPublishedAtOnce(final RouteMatcher matcher) {
+        matcher.addRoute(HttpMethod.get, "/a", "*/*", "a");
+        assertEquals("a", matcher.findTargetForRequestedRoute(HttpMethod.get, "/a", null).getTarget());
+
+        matcher.batch(() -> {
+            matcher.addRoute(HttpMethod.get, "/b", "*/*", "b");
+            matcher.addRoute(HttpMethod.get, "/c", "*/*", "c");
+            assertNull(matcher.findTargetForRequestedRoute(HttpMethod.get, "/b", null));
+            assertEquals("a", matcher.findTargetForRequestedRoute(HttpMethod.get, "/a", null).getTarget());
+        });
+
+        assertEquals("b", matcher.findTargetForRequestedRoute(HttpMethod.get, "/b", null).getTarget());
+        assertEquals("c", matcher.findTargetForRequestedRoute(HttpMethod.get, "/c", null).getTarget());
+    }
+
+}
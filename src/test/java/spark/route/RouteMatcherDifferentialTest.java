@@ -0,0 +1,602 @@
+package spark.route;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import spark.FilterImpl;
+import spark.Request;
+import spark.Response;
+import spark.RouteImpl;
+import spark.utils.SparkUtils;
+
+/**
+ * Generates random route tables and request paths and checks that every {@link RouteMatcher} implementation
+ * returns the same targets, in the same order, as matching every route against the path the way Spark did before
+ * the matchers were rewritten.
+ */
+public class RouteMatcherDifferentialTest {
+
+    private static final String[] ROUTE_PARTS = {
+            "users", "new", "edit", "a", "b", "v1", ":id", ":name", "*", "files*", ":rest*", ""
+    };
+
+    private static final String[] PATH_PARTS = {
+            "users", "new", "edit", "a", "b", "v1", "42", "x", "*", "files*", ":id", ""
+    };
+
+    private static final String[] ACCEPTED_TYPES = {
+            "*/*", "*/*", "application/json", "text/html"
+    };
+
+    private static final String[] ACCEPT_HEADERS = {
+            null, "*/*", "application/json", "text/html,application/xhtml+xml;q=0.9,*/*;q=0.8", "image/png"
+    };
+
+    private static final HttpMethod[] METHODS = {
+            HttpMethod.get, HttpMethod.post, HttpMethod.head, HttpMethod.before, HttpMethod.after
+    };
+
+    private static final HttpMethod[] REQUEST_METHODS = {
+            HttpMethod.get, HttpMethod.post, HttpMethod.head
+    };
+
+    @Test
+    public void testListMatchesSameTargetsAsReference() {
+        for (long seed = 0; seed < 200; seed++) {
+            assertSameMatches(seed, new SimpleRouteMatcher());
+        }
+    }
+
+    @Test
+    public void testTrieMatchesSameTargetsAsReference() {
+        for (long seed = 0; seed < 200; seed++) {
+            assertSameMatches(seed, new TrieRouteMatcher());
+        }
+    }
+
+    @Test
+    public void testRadixMatchesSameTargetsAsReference() {
+        for (long seed = 0; seed < 200; seed++) {
+            assertSameMatches(seed, new RadixRouteMatcher());
+        }
+    }
+
+    @Test
+    public void testCompiledMatchesSameTargetsAsReference() {
+        for (long seed = 0; seed < 200; seed++) {
+            assertSameMatches(seed, new CompiledRouteMatcher());
+        }
+    }
+
+    @Test
+    public void testCompiledMatchesRoutesAddedAfterFreezing() {
+        CompiledRouteMatcher compiled = new CompiledRouteMatcher();
+        RouteImpl user = route("/users/:id");
+        compiled.addRoute(HttpMethod.get, "/users/:id", "*/*", user);
+        assertEquals(user, compiled.findTargetForRequestedRoute(HttpMethod.get, "/users/new", null).getTarget());
+
+        RouteImpl edit = route("/users/:id/edit");
+        compiled.addRoute(HttpMethod.get, "/users/:id/edit", "*/*", edit);
+        assertEquals(edit, compiled.findTargetForRequestedRoute(HttpMethod.get, "/users/1/edit", null).getTarget());
+
+        compiled.freeze();
+        assertEquals(edit, compiled.findTargetForRequestedRoute(HttpMethod.get, "/users/1/edit", null).getTarget());
+    }
+
+    @Test
+    public void testCachingMatcherMatchesSameTargetsAsReference() {
+        for (long seed = 0; seed < 50; seed++) {
+            assertSameMatches(seed, new CachingRouteMatcher(new TrieRouteMatcher(), 64));
+        }
+    }
+
+    /**
+     * Routes of the golden cases, the path and the accept type of each.
+     */
+    private static final String[][] GOLDEN_ROUTES = {
+            {"/users/:id", "*/*"},
+            {"/users/", "*/*"},
+            {"/files/*", "*/*"},
+            {"/assets*", "*/*"},
+            {"/dl/:rest*", "*/*"},
+            {"/neg", "application/json"},
+            {"/neg", "text/html"},
+            {"/any", "*/*"},
+            {"/any", "text/html"}
+    };
+
+    /**
+     * What Spark matched before the matchers were rewritten: the path, the Accept header and the route matched,
+     * except for ties between accept types, which now go to the route added first.
+     */
+    private static final String[][] GOLDEN_CASES = {
+            // a trailing slash has to be on both the route and the path
+            {"/users/42", null, "/users/:id */*"},
+            {"/users/42/", null, null},
+            {"/users/", null, "/users/ */*"},
+            {"/users", null, null},
+            // a trailing * swallows the remaining segments and an empty one after a trailing slash
+            {"/files/a/b", null, "/files/* */*"},
+            {"/files/", null, "/files/* */*"},
+            {"/files", null, null},
+            // * at the end of a literal is no wildcard
+            {"/assets*", null, "/assets* */*"},
+            {"/assets", null, null},
+            {"/assets/x", null, null},
+            // a param ending with * matches one segment and swallows the rest
+            {"/dl/a", null, "/dl/:rest* */*"},
+            {"/dl/a/b", null, "/dl/:rest* */*"},
+            {"/dl/", null, "/dl/:rest* */*"},
+            {"/dl", null, null},
+            // the best fitness, then the best quality, then the route added first
+            {"/neg", null, "/neg application/json"},
+            {"/neg", "*/*", "/neg application/json"},
+            {"/neg", "text/html", "/neg text/html"},
+            {"/neg", "text/html;q=0.5,application/json", "/neg application/json"},
+            {"/neg", "text/html,application/json", "/neg application/json"},
+            {"/neg", "image/png", null},
+            {"/any", "text/html", "/any text/html"},
+            {"/any", "image/png", "/any */*"},
+            {"/any", "*/*", "/any */*"}
+    };
+
+    @Test
+    public void testGoldenCases() {
+        assertGoldenCases(new ReferenceMatcher());
+        assertGoldenCases(new SimpleRouteMatcher());
+        assertGoldenCases(new TrieRouteMatcher());
+        assertGoldenCases(new RadixRouteMatcher());
+        assertGoldenCases(new CompiledRouteMatcher());
+        assertGoldenCases(new CachingRouteMatcher(new TrieRouteMatcher(), 64));
+    }
+
+    @Test
+    public void testGoldenParamsAndSplat() {
+        RouteMatcher[] matchers = {
+                new ReferenceMatcher(), new SimpleRouteMatcher(), new TrieRouteMatcher(), new RadixRouteMatcher(),
+                new CompiledRouteMatcher()
+        };
+        for (RouteMatcher matcher : matchers) {
+            String name = matcher.getClass().getSimpleName();
+            addGoldenRoutes(matcher);
+
+            RouteMatch rest = matcher.findTargetForRequestedRoute(HttpMethod.get, "/dl/a/b", null);
+            assertEquals(name, Collections.singletonMap(":rest*", "a"), rest.getParams());
+            assertEquals(name, Collections.emptyList(), rest.getSplat());
+
+            RouteMatch files = matcher.findTargetForRequestedRoute(HttpMethod.get, "/files/a/b", null);
+            assertEquals(name, Collections.emptyMap(), files.getParams());
+            assertEquals(name, Collections.singletonList("a/b"), files.getSplat());
+
+            RouteMatch user = matcher.findTargetForRequestedRoute(HttpMethod.get, "/users/42", null);
+            assertEquals(name, Collections.singletonMap(":id", "42"), user.getParams());
+        }
+    }
+
+    private static void addGoldenRoutes(RouteMatcher matcher) {
+        for (String[] route : GOLDEN_ROUTES) {
+            matcher.addRoute(HttpMethod.get, route[0], route[1], route(route[0] + " " + route[1]));
+        }
+    }
+
+    private static void assertGoldenCases(RouteMatcher matcher) {
+        addGoldenRoutes(matcher);
+        for (String[] golden : GOLDEN_CASES) {
+            String message = matcher.getClass().getSimpleName() + ": " + golden[0] + ", accept " + golden[1];
+            Object target = target(matcher.findTargetForRequestedRoute(HttpMethod.get, golden[0], golden[1]));
+            assertEquals(message, golden[2] != null ? "route " + golden[2] : null,
+                         target != null ? target.toString() : null);
+        }
+    }
+
+    @Test
+    public void testTrieBacktracksFromLiteralToParam() {
+        RouteMatcher trie = new TrieRouteMatcher();
+        RouteImpl create = route("/users/new");
+        RouteImpl edit = route("/users/:id/edit");
+        trie.addRoute(HttpMethod.get, "/users/new", "*/*", create);
+        trie.addRoute(HttpMethod.get, "/users/:id/edit", "*/*", edit);
+
+        assertEquals(create, trie.findTargetForRequestedRoute(HttpMethod.get, "/users/new", null).getTarget());
+        assertEquals(edit, trie.findTargetForRequestedRoute(HttpMethod.get, "/users/new/edit", null).getTarget());
+    }
+
+    @Test
+    public void testTrieSplatSwallowsRemainingSegments() {
+        RouteMatcher trie = new TrieRouteMatcher();
+        RouteImpl files = route("/files/*");
+        trie.addRoute(HttpMethod.get, "/files/*", "*/*", files);
+
+        assertEquals(files, trie.findTargetForRequestedRoute(HttpMethod.get, "/files/a/b/c", null).getTarget());
+        assertEquals(files, trie.findTargetForRequestedRoute(HttpMethod.get, "/files/", null).getTarget());
+        assertEquals(null, trie.findTargetForRequestedRoute(HttpMethod.get, "/files", null));
+    }
+
+    private static void assertSameMatches(long seed, RouteMatcher matcher) {
+        Random random = new Random(seed);
+        RouteMatcher expected = new ReferenceMatcher();
+        List<String> routePaths = new ArrayList<>();
+
+        int routeCount = 1 + random.nextInt(40);
+        for (int i = 0; i < routeCount; i++) {
+            HttpMethod method = METHODS[random.nextInt(METHODS.length)];
+            boolean filter = method == HttpMethod.before || method == HttpMethod.after;
+            String path = filter && random.nextInt(5) == 0
+                    ? SparkUtils.ALL_PATHS : randomPath(random, ROUTE_PARTS);
+            String acceptedType = ACCEPTED_TYPES[random.nextInt(ACCEPTED_TYPES.length)];
+            Object target = filter ? filter(path) : route(path);
+
+            routePaths.add(path);
+            expected.addRoute(method, path, acceptedType, target);
+            matcher.addRoute(method, path, acceptedType, target);
+        }
+
+        for (int i = 0; i < 200; i++) {
+            // the paths of the routes themselves are answered from the static route index
+            String path = random.nextInt(3) == 0
+                    ? routePaths.get(random.nextInt(routePaths.size())) : randomPath(random, PATH_PARTS);
+            String acceptType = ACCEPT_HEADERS[random.nextInt(ACCEPT_HEADERS.length)];
+            for (HttpMethod method : METHODS) {
+                String message = "seed " + seed + ", " + method + " " + path + ", accept " + acceptType;
+                assertEquals(message,
+                             target(expected.findTargetForRequestedRoute(method, path, acceptType)),
+                             target(matcher.findTargetForRequestedRoute(method, path, acceptType)));
+                assertEquals(message,
+                             targets(expected.findTargetsForRequestedRoute(method, path, acceptType)),
+                             targets(matcher.findTargetsForRequestedRoute(method, path, acceptType)));
+            }
+            for (HttpMethod method : REQUEST_METHODS) {
+                String message = "seed " + seed + ", plan " + method + " " + path + ", accept " + acceptType;
+                assertEquals(message,
+                             plan(expected.findPlanForRequestedRoute(method, path, acceptType), true),
+                             plan(matcher.findPlanForRequestedRoute(method, path, acceptType), false));
+            }
+        }
+    }
+
+    private static String randomPath(Random random, String[] parts) {
+        StringBuilder path = new StringBuilder();
+        int length = random.nextInt(5);
+        for (int i = 0; i < length; i++) {
+            path.append('/').append(parts[random.nextInt(parts.length)]);
+        }
+        if (length == 0 || random.nextInt(4) == 0) {
+            path.append('/');
+        }
+        return path.toString();
+    }
+
+    private static Object target(RouteMatch match) {
+        return match != null ? match.getTarget() : null;
+    }
+
+    private static List<Object> targets(List<RouteMatch> matches) {
+        List<Object> targets = new ArrayList<>();
+        for (RouteMatch match : matches) {
+            targets.add(match.getTarget());
+        }
+        return targets;
+    }
+
+    /**
+     * @param reference true to extract the params and the splat the way the reference does
+     */
+    private static List<Object> plan(RoutePlan plan, boolean reference) {
+        List<Object> steps = new ArrayList<>();
+        steps.add(targets(plan.getBeforeFilters()));
+        steps.add(target(plan.getRoute()));
+        RouteMatch route = plan.getRoute();
+        if (route != null) {
+            steps.add(reference ? ReferenceMatcher.params(route) : route.getParams());
+            steps.add(reference ? ReferenceMatcher.splat(route) : route.getSplat());
+        }
+        steps.add(plan.hasGetFallback());
+        steps.add(targets(plan.getAfterFilters()));
+        return steps;
+    }
+
+    private static RouteImpl route(String path) {
+        return new RouteImpl(path) {
+            @Override
+            public Object handle(Request request, Response response) {
+                return null;
+            }
+
+            @Override
+            public String toString() {
+                return "route " + path;
+            }
+        };
+    }
+
+    private static FilterImpl filter(String path) {
+        return new FilterImpl(path) {
+            @Override
+            public void handle(Request request, Response response) {
+            }
+
+            @Override
+            public String toString() {
+                return "filter " + path;
+            }
+        };
+    }
+
+    /**
+     * Matches every route against the path with a copy of the matching, accept type negotiation and parameter
+     * extraction of Spark before the matchers were rewritten, so that it does not change with them. The one
+     * deliberate difference: when accept types match equally well the route added first wins, where the original
+     * picked whichever came last in the iteration order of a HashMap.
+     */
+    private static class ReferenceMatcher extends RouteMatcher {
+
+        private final List<ReferenceRoute> routes = new ArrayList<>();
+
+        @Override
+        void addRoute(HttpMethod method, String route, String acceptType, Object target) {
+            routes.add(new ReferenceRoute(method, route, acceptType, target));
+        }
+
+        @Override
+        public RouteMatch findTargetForRequestedRoute(HttpMethod httpMethod, String path, String acceptType) {
+            List<ReferenceRoute> matching = matching(httpMethod, path);
+            if (matching.isEmpty()) {
+                return null;
+            }
+            ReferenceRoute best = matching.get(0);
+            if (acceptType != null) {
+                float[] bestFit = fitnessAndQuality(best.acceptType, acceptType);
+                for (ReferenceRoute route : matching) {
+                    float[] fit = fitnessAndQuality(route.acceptType, acceptType);
+                    if (fit[0] > bestFit[0] || (fit[0] == bestFit[0] && fit[1] > bestFit[1])) {
+                        best = route;
+                        bestFit = fit;
+                    }
+                }
+                if (bestFit[1] == 0) {
+                    return null;
+                }
+            }
+            return new RouteMatch(httpMethod, best.target, best.path, path, acceptType);
+        }
+
+        @Override
+        public List<RouteMatch> findTargetsForRequestedRoute(HttpMethod httpMethod, String path, String acceptType) {
+            List<RouteMatch> matches = new ArrayList<>();
+            for (ReferenceRoute route : matching(httpMethod, path)) {
+                if (acceptType == null || fitnessAndQuality(route.acceptType, acceptType)[1] != 0) {
+                    matches.add(new RouteMatch(httpMethod, route.target, route.path, path, acceptType));
+                }
+            }
+            return matches;
+        }
+
+        @Override
+        public void clearRoutes() {
+            routes.clear();
+        }
+
+        private List<ReferenceRoute> matching(HttpMethod httpMethod, String path) {
+            List<ReferenceRoute> matching = new ArrayList<>();
+            for (ReferenceRoute route : routes) {
+                if (route.matches(httpMethod, path)) {
+                    matching.add(route);
+                }
+            }
+            return matching;
+        }
+
+        static Map<String, String> params(RouteMatch match) {
+            List<String> request = convertRouteToList(match.getRequestURI());
+            List<String> matched = convertRouteToList(match.getMatchUri());
+            Map<String, String> params = new HashMap<>();
+            for (int i = 0; (i < request.size()) && (i < matched.size()); i++) {
+                String matchedPart = matched.get(i);
+                if (matchedPart.startsWith(":")) {
+                    params.put(matchedPart.toLowerCase(), request.get(i));
+                }
+            }
+            return params;
+        }
+
+        static List<String> splat(RouteMatch match) {
+            List<String> request = convertRouteToList(match.getRequestURI());
+            List<String> matched = convertRouteToList(match.getMatchUri());
+            int nbrOfRequestParts = request.size();
+            int nbrOfMatchedParts = matched.size();
+            boolean sameLength = (nbrOfRequestParts == nbrOfMatchedParts);
+            List<String> splat = new ArrayList<>();
+            for (int i = 0; (i < nbrOfRequestParts) && (i < nbrOfMatchedParts); i++) {
+                if (matched.get(i).equals("*")) {
+                    StringBuilder splatParam = new StringBuilder(request.get(i));
+                    if (!sameLength && (i == (nbrOfMatchedParts - 1))) {
+                        for (int j = i + 1; j < nbrOfRequestParts; j++) {
+                            splatParam.append("/");
+                            splatParam.append(request.get(j));
+                        }
+                    }
+                    splat.add(splatParam.toString());
+                }
+            }
+            return splat;
+        }
+
+        private static List<String> convertRouteToList(String route) {
+            List<String> path = new ArrayList<>();
+            for (String p : route.split("/")) {
+                if (p.length() > 0) {
+                    path.add(p);
+                }
+            }
+            return path;
+        }
+
+        /**
+         * @return the fitness and the quality of the best media range of the Accept header matching mimeType,
+         * {-1, 0} if none does
+         */
+        private static float[] fitnessAndQuality(String mimeType, String header) {
+            List<String[]> ranges = new ArrayList<>();
+            List<Map<String, String>> rangeParams = new ArrayList<>();
+            for (String r : header.split(",")) {
+                Map<String, String> params = new HashMap<>();
+                ranges.add(parseMediaRange(r, params));
+                rangeParams.add(params);
+            }
+            Map<String, String> targetParams = new HashMap<>();
+            String[] target = parseMediaRange(mimeType, targetParams);
+
+            int bestFitness = -1;
+            float bestFitQ = 0;
+            for (int r = 0; r < ranges.size(); r++) {
+                String[] range = ranges.get(r);
+                Map<String, String> params = rangeParams.get(r);
+                if ((target[0].equals(range[0]) || range[0].equals("*") || target[0].equals("*"))
+                        && (target[1].equals(range[1]) || range[1].equals("*") || target[1].equals("*"))) {
+                    for (String k : targetParams.keySet()) {
+                        int paramMatches = 0;
+                        if (!k.equals("q") && params.containsKey(k) && targetParams.get(k).equals(params.get(k))) {
+                            paramMatches++;
+                        }
+                        int fitness = (range[0].equals(target[0])) ? 100 : 0;
+                        fitness += (range[1].equals(target[1])) ? 10 : 0;
+                        fitness += paramMatches;
+                        if (fitness > bestFitness) {
+                            bestFitness = fitness;
+                            bestFitQ = toFloat(params.get("q"), 0);
+                        }
+                    }
+                }
+            }
+            return new float[] {bestFitness, bestFitQ};
+        }
+
+        /**
+         * @return the type and the subtype of range, its parameters are put into params with q defaulting to 1
+         */
+        private static String[] parseMediaRange(String range, Map<String, String> params) {
+            String[] parts = range.split(";");
+            for (int i = 1; i < parts.length; ++i) {
+                String[] subParts = parts[i].split("=");
+                if (subParts.length == 2) {
+                    params.put(subParts[0].trim(), subParts[1].trim());
+                }
+            }
+            String fullType = parts[0].trim();
+            if (fullType.equals("*")) {
+                fullType = "*/*";
+            }
+            String[] types = fullType.split("/");
+            String q = params.get("q");
+            float f = toFloat(q, 1);
+            if (q == null || q.trim().isEmpty() || f < 0 || f > 1) {
+                params.put("q", "1");
+            }
+            return new String[] {types[0].trim(), types[1].trim()};
+        }
+
+        private static float toFloat(String str, float defaultValue) {
+            if (str == null) {
+                return defaultValue;
+            }
+            try {
+                return Float.parseFloat(str);
+            } catch (NumberFormatException nfe) {
+                return defaultValue;
+            }
+        }
+    }
+
+    private static class ReferenceRoute {
+
+        private final HttpMethod httpMethod;
+        private final String path;
+        private final String acceptType;
+        private final Object target;
+
+        private ReferenceRoute(HttpMethod httpMethod, String path, String acceptType, Object target) {
+            this.httpMethod = httpMethod;
+            this.path = path;
+            this.acceptType = acceptType;
+            this.target = target;
+        }
+
+        boolean matches(HttpMethod httpMethod, String path) {
+            if ((httpMethod == HttpMethod.before || httpMethod == HttpMethod.after)
+                    && (this.httpMethod == httpMethod)
+                    && this.path.equals(SparkUtils.ALL_PATHS)) {
+                return true;
+            }
+            return this.httpMethod == httpMethod && matchPath(path);
+        }
+
+        private boolean matchPath(String path) { // NOSONAR
+            if (!this.path.endsWith("*") && ((path.endsWith("/") && !this.path.endsWith("/")) // NOSONAR
+                    || (this.path.endsWith("/") && !path.endsWith("/")))) {
+                return false;
+            }
+            if (this.path.equals(path)) {
+                return true;
+            }
+
+            List<String> thisPathList = ReferenceMatcher.convertRouteToList(this.path);
+            List<String> pathList = ReferenceMatcher.convertRouteToList(path);
+
+            int thisPathSize = thisPathList.size();
+            int pathSize = pathList.size();
+
+            if (thisPathSize == pathSize) {
+                for (int i = 0; i < thisPathSize; i++) {
+                    String thisPathPart = thisPathList.get(i);
+                    String pathPart = pathList.get(i);
+
+                    if ((i == thisPathSize - 1) && (thisPathPart.equals("*") && this.path.endsWith("*"))) {
+                        return true;
+                    }
+
+                    if ((!thisPathPart.startsWith(":"))
+                            && !thisPathPart.equals(pathPart)
+                            && !thisPathPart.equals("*")) {
+                        return false;
+                    }
+                }
+                return true;
+            } else {
+                if (this.path.endsWith("*")) {
+                    if (pathSize == (thisPathSize - 1) && (path.endsWith("/"))) {
+                        // makes wildcards work with a trailing slash
+                        pathList.add("");
+                        pathList.add("");
+                        pathSize += 2;
+                    }
+
+                    if (thisPathSize < pathSize) {
+                        for (int i = 0; i < thisPathSize; i++) {
+                            String thisPathPart = thisPathList.get(i);
+                            String pathPart = pathList.get(i);
+                            if (thisPathPart.equals("*") && (i == thisPathSize - 1) && this.path.endsWith("*")) {
+                                return true;
+                            }
+                            if (!thisPathPart.startsWith(":")
+                                    && !thisPathPart.equals(pathPart)
+                                    && !thisPathPart.equals("*")) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }
+                }
+                return false;
+            }
+        }
+    }
+
+}
@@ -37,7 +37,6 @@ public class ServletTest {
 
         // Set some timeout options to make debugging easier.
         connector.setIdleTimeout(1000 * 60 * 60);
-        connector.setSoLingerTime(-1);
         connector.setPort(PORT);
         server.setConnectors(new Connector[] {connector});
 
@@ -2,6 +2,7 @@ package spark.util;
 
 import java.io.FileInputStream;
 import java.io.UnsupportedEncodingException;
+import java.net.URI;
 import java.security.KeyStore;
 import java.util.HashMap;
 import java.util.Map;
@@ -21,6 +22,7 @@ import org.apache.http.client.methods.HttpOptions;
 import org.apache.http.client.methods.HttpPatch;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.methods.HttpTrace;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.conn.ClientConnectionManager;
@@ -143,7 +145,16 @@ public class SparkTestUtil {
 				return new HttpOptions(uri);
 			}
 
-			throw new IllegalArgumentException("Unknown method " + requestMethod);
+			// any other method, e.g. one of WebDAV
+			HttpRequestBase other = new HttpRequestBase() {
+				@Override
+				public String getMethod() {
+					return requestMethod;
+				}
+			};
+			other.setURI(URI.create(uri));
+			other.setHeader("Accept", acceptType);
+			return other;
 
 		} catch (UnsupportedEncodingException e) {
 			throw new RuntimeException(e);
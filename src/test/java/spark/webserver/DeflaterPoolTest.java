@@ -0,0 +1,35 @@
+package spark.webserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import org.junit.Test;
+
+public class DeflaterPoolTest {
+
+    @Test
+    public void testIdleDeflatersAreBoundedAndTheOthersEnded() {
+        int level = Deflater.BEST_SPEED;
+        List<Deflater> deflaters = new ArrayList<>();
+        for (int i = 0; i < DeflaterPool.CAPACITY + 2; i++) {
+            deflaters.add(DeflaterPool.acquire(level, true));
+        }
+        for (Deflater deflater : deflaters) {
+            DeflaterPool.release(deflater, level, true);
+        }
+        assertEquals(DeflaterPool.CAPACITY, DeflaterPool.idle(level, true));
+
+        Deflater last = deflaters.get(deflaters.size() - 1);
+        try {
+            last.getBytesRead();
+            fail("the deflater the pool could not take back should have been ended");
+        } catch (NullPointerException e) {
+            // ended
+        }
+    }
+
+}